@@ -0,0 +1,33 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * The `BenchCommands` class exposes the command parser and the command loop of `gatorLibrary` to the
+ * benchmarks in `gatorbench`.
+ */
+public class BenchCommands implements gatorbench.Commands {
+
+    @Override
+    public int parse(byte[] input) throws IOException {
+        CommandParser parser = new CommandParser(new ByteArrayInputStream(input));
+        Command command = new Command();
+        int count = 0;
+        while (parser.next(command)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long run(byte[] input, String engineName) throws IOException {
+        CountingSink out = new CountingSink();
+        LibraryEngine engine = gatorLibrary.createEngine(engineName, out);
+        CommandParser parser = new CommandParser(new ByteArrayInputStream(input));
+        Command command = new Command();
+        BookBatch bulk = new BookBatch();
+        while (parser.next(command) && gatorLibrary.execute(engine, command, bulk)) {
+            out.endCommand();
+        }
+        return out.getCount();
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * The `BenchLibrary` class exposes a storage engine to the benchmarks in `gatorbench`, which cannot refer to
+ * classes in the unnamed package and so reach the engine through the `gatorbench.Library` interface.
+ */
+public class BenchLibrary implements gatorbench.Library {
+    private static final String TITLE = "Introduction to Algorithms";
+    private static final String AUTHOR = "Thomas H. Cormen";
+
+    private final CountingSink out = new CountingSink();
+    private final LibraryEngine engine;
+
+    // Creates an empty engine by its gatorLibrary.engine name.
+    public BenchLibrary(String engineName) {
+        this.engine = gatorLibrary.createEngine(engineName, out);
+    }
+
+    @Override
+    public void insertBook(int bookId) {
+        engine.insertBook(bookId, TITLE, AUTHOR, true);
+    }
+
+    @Override
+    public void deleteBook(int bookId) {
+        engine.deleteBook(bookId);
+    }
+
+    @Override
+    public void printBook(int bookId) {
+        engine.writeBook(bookId);
+    }
+
+    @Override
+    public void printBooks(int bookId1, int bookId2) {
+        engine.printBooks(bookId1, bookId2);
+    }
+
+    @Override
+    public void findClosestBook(int targetId) {
+        engine.findClosestBook(targetId);
+    }
+
+    @Override
+    public long outputCount() {
+        return out.getCount();
+    }
+}
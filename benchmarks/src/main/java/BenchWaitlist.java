@@ -0,0 +1,30 @@
+/**
+ * The `BenchWaitlist` class exposes one book's reservation heap to the benchmarks in `gatorbench`, numbering
+ * the reservations the way `RedBlackTree` does.
+ */
+public class BenchWaitlist implements gatorbench.Waitlist {
+    private final CountingSink out = new CountingSink();
+    private final MinHeap heap = new MinHeap();
+    private long sequence;
+
+    @Override
+    public void reserve(int patronId, int priority) {
+        heap.insertNode(patronId, MinHeap.key(priority, sequence++));
+    }
+
+    @Override
+    public int poll() {
+        return heap.pollPatronId();
+    }
+
+    @Override
+    public long print() {
+        heap.writePatrons(out);
+        return out.getCount();
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * The `CountingSink` class is an `OutputSink` for benchmarks that discards the output and only counts the
+ * pieces appended, so results cost no I/O but are still consumed.
+ */
+public class CountingSink implements OutputSink {
+    private long count;
+
+    @Override
+    public OutputSink append(String text) {
+        count += text.length();
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        count++;
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        count++;
+        return this;
+    }
+
+    @Override
+    public void endCommand() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Returns the number of characters, numbers and strings' characters appended so far.
+    public long getCount() {
+        return count;
+    }
+}
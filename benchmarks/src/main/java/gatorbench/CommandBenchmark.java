@@ -0,0 +1,51 @@
+package gatorbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The `CommandBenchmark` class measures the throughput of a whole command file held in memory, decoded alone
+ * and decoded and executed on a new engine. Scores are commands per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+    private static final int COMMANDS = 200_000;
+
+    private Commands commands;
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        commands = Targets.commands();
+        input = Workloads.commandFile(COMMANDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public int parse() throws IOException {
+        return commands.parse(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public long endToEnd() throws IOException {
+        return commands.run(input, "tree");
+    }
+}
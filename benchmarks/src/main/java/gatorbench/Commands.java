@@ -0,0 +1,29 @@
+package gatorbench;
+
+import java.io.IOException;
+
+/**
+ * The `Commands` interface runs the gatorLibrary command parser and command loop over an input held in
+ * memory. It is implemented by `BenchCommands` in the unnamed package, next to the engine.
+ */
+public interface Commands {
+
+    /**
+     * Decodes every command of the input without executing it.
+     *
+     * @param input The contents of a command file.
+     * @return The number of commands decoded.
+     * @throws IOException If the input cannot be decoded.
+     */
+    int parse(byte[] input) throws IOException;
+
+    /**
+     * Decodes and executes the commands of the input on a new engine, discarding the output.
+     *
+     * @param input      The contents of a command file.
+     * @param engineName The gatorLibrary.engine name of the engine to run.
+     * @return The amount of output written.
+     * @throws IOException If the input cannot be decoded.
+     */
+    long run(byte[] input, String engineName) throws IOException;
+}
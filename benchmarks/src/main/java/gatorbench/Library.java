@@ -0,0 +1,22 @@
+package gatorbench;
+
+/**
+ * The `Library` interface lists the engine operations measured by the benchmarks. It is implemented by
+ * `BenchLibrary` in the unnamed package, next to the engine.
+ */
+public interface Library {
+
+    // Inserts an available book with a fixed title and author.
+    void insertBook(int bookId);
+
+    void deleteBook(int bookId);
+
+    void printBook(int bookId);
+
+    void printBooks(int bookId1, int bookId2);
+
+    void findClosestBook(int targetId);
+
+    // Returns the amount of output written so far, for the benchmarks to consume.
+    long outputCount();
+}
@@ -0,0 +1,54 @@
+package gatorbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The `RangeBenchmark` class measures PrintBooks over ranges of different widths in a catalog of the even IDs.
+ * A range of width w holds about w / 2 books.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RangeBenchmark {
+
+    @Param({"1000000"})
+    int books;
+
+    @Param({"10", "1000", "100000"})
+    int width;
+
+    @Param({"tree", "array"})
+    String engine;
+
+    private Library library;
+    private int[] starts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        library = Workloads.evenBooks(engine, books);
+        starts = Workloads.probes(Math.max(1, 2 * books - width), false);
+    }
+
+    @Benchmark
+    public long printBooks() {
+        int start = starts[next++ & (Workloads.PROBES - 1)];
+        library.printBooks(start, start + width - 1);
+        return library.outputCount();
+    }
+}
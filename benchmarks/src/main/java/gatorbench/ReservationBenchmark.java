@@ -0,0 +1,70 @@
+package gatorbench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The `ReservationBenchmark` class measures a single book's reservation heap at different waitlist depths.
+ * Each reservation is followed by a poll, so the depth stays the same throughout a run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int depth;
+
+    private Waitlist waitlist;
+    private int[] priorities;
+    private int nextPatron;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(Workloads.SEED);
+        priorities = new int[Workloads.PROBES];
+        for (int i = 0; i < priorities.length; i++) {
+            priorities[i] = random.nextInt(20) + 1;
+        }
+        waitlist = Targets.waitlist();
+        for (nextPatron = 0; nextPatron < depth; nextPatron++) {
+            waitlist.reserve(nextPatron, priorities[next++ & (Workloads.PROBES - 1)]);
+        }
+    }
+
+    @Benchmark
+    public int reservePoll() {
+        waitlist.reserve(nextPatron++, priorities[next++ & (Workloads.PROBES - 1)]);
+        return waitlist.poll();
+    }
+
+    // Prints the waitlist again while it is unchanged, which reuses its sorted view.
+    @Benchmark
+    public long printUnchanged() {
+        return waitlist.print();
+    }
+
+    // Prints the waitlist after a change, which sorts it again.
+    @Benchmark
+    public long printAfterChange() {
+        waitlist.reserve(nextPatron++, priorities[next++ & (Workloads.PROBES - 1)]);
+        waitlist.poll();
+        return waitlist.print();
+    }
+}
@@ -0,0 +1,38 @@
+package gatorbench;
+
+/**
+ * The `Targets` class creates the objects the benchmarks measure. The engine lives in the unnamed package,
+ * which classes in a named package cannot refer to, while JMH only accepts benchmarks in a named package;
+ * so the adapters are created by class name and used through the interfaces of this package.
+ */
+final class Targets {
+
+    private Targets() {
+    }
+
+    // Returns an empty engine of the given gatorLibrary.engine name.
+    static Library library(String engineName) {
+        return (Library) create("BenchLibrary", engineName);
+    }
+
+    // Returns an empty reservation heap.
+    static Waitlist waitlist() {
+        return (Waitlist) create("BenchWaitlist");
+    }
+
+    static Commands commands() {
+        return (Commands) create("BenchCommands");
+    }
+
+    private static Object create(String className, Object... args) {
+        try {
+            Class<?>[] types = new Class<?>[args.length];
+            for (int i = 0; i < args.length; i++) {
+                types[i] = args[i].getClass();
+            }
+            return Class.forName(className).getConstructor(types).newInstance(args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create benchmark target " + className, e);
+        }
+    }
+}
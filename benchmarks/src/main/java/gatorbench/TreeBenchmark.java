@@ -0,0 +1,74 @@
+package gatorbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The `TreeBenchmark` class measures single-book operations on a catalog of a given size. The catalog holds
+ * the even IDs, so odd IDs are misses and can be inserted and deleted again without changing its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TreeBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int books;
+
+    @Param({"tree", "array"})
+    String engine;
+
+    private Library library;
+    private int[] hits;
+    private int[] misses;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        library = Workloads.evenBooks(engine, books);
+        hits = Workloads.probes(2 * books, false);
+        misses = Workloads.probes(2 * books, true);
+    }
+
+    // Inserts a book and deletes it again, two rebalancing updates of the tree.
+    @Benchmark
+    public long insertDelete() {
+        int bookId = misses[next++ & (Workloads.PROBES - 1)];
+        library.insertBook(bookId);
+        library.deleteBook(bookId);
+        return library.outputCount();
+    }
+
+    @Benchmark
+    public long printBookHit() {
+        library.printBook(hits[next++ & (Workloads.PROBES - 1)]);
+        return library.outputCount();
+    }
+
+    @Benchmark
+    public long printBookMiss() {
+        library.printBook(misses[next++ & (Workloads.PROBES - 1)]);
+        return library.outputCount();
+    }
+
+    // Searches for an odd ID, which lies halfway between two books unless it is past the last one.
+    @Benchmark
+    public long findClosestBook() {
+        library.findClosestBook(misses[next++ & (Workloads.PROBES - 1)]);
+        return library.outputCount();
+    }
+}
@@ -0,0 +1,19 @@
+package gatorbench;
+
+/**
+ * The `Waitlist` interface lists the reservation heap operations measured by the benchmarks. It is
+ * implemented by `BenchWaitlist` in the unnamed package, next to the engine.
+ */
+public interface Waitlist {
+
+    // Adds a reservation, numbered after every earlier one.
+    void reserve(int patronId, int priority);
+
+    // Removes the first reservation and returns its patron ID, or -1 if there is none.
+    int poll();
+
+    // Writes the patron IDs in allotment order and returns the amount of output written so far.
+    long print();
+
+    int size();
+}
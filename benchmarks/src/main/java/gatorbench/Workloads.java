@@ -0,0 +1,92 @@
+package gatorbench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * The `Workloads` class builds the seeded inputs shared by the benchmarks, so every run measures the same
+ * trees and command files.
+ */
+final class Workloads {
+    static final long SEED = 5536;
+    static final int PROBES = 1 << 16; // Length of the probe arrays; a power of two, so indexes wrap with a mask
+
+    private Workloads() {
+    }
+
+    /**
+     * Creates an engine holding the books 0, 2, 4, ..., 2 * (books - 1), inserted in a random order. The odd
+     * IDs in between are free for inserts and misses.
+     *
+     * @param engineName The gatorLibrary.engine name of the engine.
+     * @param books      The number of books.
+     * @return The filled engine.
+     */
+    static Library evenBooks(String engineName, int books) {
+        int[] ids = new int[books];
+        for (int i = 0; i < books; i++) {
+            ids[i] = 2 * i;
+        }
+        Random random = new Random(SEED);
+        for (int i = books - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        Library library = Targets.library(engineName);
+        for (int id : ids) {
+            library.insertBook(id);
+        }
+        return library;
+    }
+
+    /**
+     * Returns random probes in [0, bound) that are all odd or all even.
+     *
+     * @param bound The exclusive upper bound.
+     * @param odd   True for odd probes, false for even ones.
+     * @return PROBES probes.
+     */
+    static int[] probes(int bound, boolean odd) {
+        Random random = new Random(SEED + (odd ? 1 : 0));
+        int[] probes = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = (random.nextInt(bound) & ~1) | (odd ? 1 : 0);
+        }
+        return probes;
+    }
+
+    /**
+     * Writes a command file of the given length. Four in ten commands insert books, and the rest print, borrow,
+     * return, delete or search books, over IDs drawn from as many IDs as there are commands.
+     *
+     * @param commands The number of commands.
+     * @return The command file, ending with Quit().
+     */
+    static byte[] commandFile(int commands) {
+        Random random = new Random(SEED);
+        StringBuilder text = new StringBuilder(commands * 32);
+        for (int i = 0; i < commands - 1; i++) {
+            int bookId = random.nextInt(commands) + 1;
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                text.append("InsertBook(").append(bookId).append(", \"Book ").append(bookId)
+                        .append("\", \"Author ").append(bookId % 997).append("\", \"Yes\")\n");
+            } else if (kind < 5) {
+                text.append("PrintBook(").append(bookId).append(")\n");
+            } else if (kind < 7) {
+                text.append("BorrowBook(").append(random.nextInt(1000) + 1).append(", ").append(bookId)
+                        .append(", ").append(random.nextInt(20) + 1).append(")\n");
+            } else if (kind < 8) {
+                text.append("ReturnBook(").append(random.nextInt(1000) + 1).append(", ").append(bookId).append(")\n");
+            } else if (kind < 9) {
+                text.append("DeleteBook(").append(bookId).append(")\n");
+            } else {
+                text.append("FindClosestBook(").append(bookId).append(")\n");
+            }
+        }
+        text.append("Quit()\n");
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
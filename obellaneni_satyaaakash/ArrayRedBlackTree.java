@@ -0,0 +1,882 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The `ArrayRedBlackTree` class is a storage engine for the library that keeps the Red-Black Tree in parallel
+ * primitive arrays instead of `RedBlackNode` objects.
+ * A node is an int slot: its key, children and parent live in `int[]` arrays, its color and availability in
+ * packed bit sets, and its title, author, borrower and reservations in arrays indexed by the same slot.
+ * Slot 0 is the sentinel nil node. Slots freed by deletions are reused through a free list threaded through
+ * the `left` array. The balancing and color flip accounting follow `RedBlackTree` step for step, so both
+ * engines produce the same output for the same commands. Snapshots use the `RedBlackTree` format, so either
+ * engine can read the other's.
+ */
+class ArrayRedBlackTree implements LibraryEngine, Checkpointable {
+    private static final int NIL = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Tree structure, indexed by slot.
+    private int[] key;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private long[] redBits; // Bit set of red slots; every other slot is black
+
+    // Book payload, indexed by slot.
+    private String[] bookName;
+    private String[] authorName;
+    private long[] availableBits; // Bit set of available books
+    private int[] borrowedBy;
+    private MinHeap[] minHeap;    // Reservations, null until the book's first reservation
+
+    private int root = NIL;
+    private int nextUnused = 1; // First slot never handed out
+    private int freeList = NIL; // Head of the list of freed slots, linked through left
+
+    public int flipCount; // Counter to track color flip operations.
+    private long reservationSequence;
+
+    // Slots recolored during the current operation with the color each had before it (true for red).
+    private int[] recolored = new int[16];
+    private boolean[] originalRed = new boolean[16];
+    private int recoloredCount;
+
+    private final OutputSink out;
+
+    // Constructor initializes an empty tree that keeps its results in memory.
+    public ArrayRedBlackTree() {
+        this(new StringBuilderSink());
+    }
+
+    // Constructor initializes an empty tree that writes its results to the given sink.
+    public ArrayRedBlackTree(OutputSink out) {
+        this.out = out;
+        key = new int[INITIAL_CAPACITY];
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        parent = new int[INITIAL_CAPACITY];
+        redBits = new long[(INITIAL_CAPACITY + 63) >>> 6];
+        bookName = new String[INITIAL_CAPACITY];
+        authorName = new String[INITIAL_CAPACITY];
+        availableBits = new long[(INITIAL_CAPACITY + 63) >>> 6];
+        borrowedBy = new int[INITIAL_CAPACITY];
+        minHeap = new MinHeap[INITIAL_CAPACITY];
+        key[NIL] = -1;
+    }
+
+    @Override
+    public OutputSink getOutput() {
+        return out;
+    }
+
+    private boolean isRed(int node) {
+        return (redBits[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void paint(int node, boolean red) {
+        if (red) {
+            redBits[node >>> 6] |= 1L << node;
+        } else {
+            redBits[node >>> 6] &= ~(1L << node);
+        }
+    }
+
+    private boolean isAvailable(int node) {
+        return (availableBits[node >>> 6] & (1L << node)) != 0;
+    }
+
+    private void setAvailable(int node, boolean available) {
+        if (available) {
+            availableBits[node >>> 6] |= 1L << node;
+        } else {
+            availableBits[node >>> 6] &= ~(1L << node);
+        }
+    }
+
+    // Hands out a slot for a new node, reusing a freed one when possible.
+    private int allocate() {
+        if (freeList != NIL) {
+            int slot = freeList;
+            freeList = left[slot];
+            return slot;
+        }
+        if (nextUnused == key.length) {
+            grow();
+        }
+        return nextUnused++;
+    }
+
+    // Returns a deleted node's slot to the free list, dropping its references.
+    private void release(int slot) {
+        bookName[slot] = null;
+        authorName[slot] = null;
+        minHeap[slot] = null;
+        left[slot] = freeList;
+        freeList = slot;
+    }
+
+    // Doubles every per-slot array.
+    private void grow() {
+        int capacity = key.length * 2;
+        key = Arrays.copyOf(key, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        redBits = Arrays.copyOf(redBits, (capacity + 63) >>> 6);
+        bookName = Arrays.copyOf(bookName, capacity);
+        authorName = Arrays.copyOf(authorName, capacity);
+        availableBits = Arrays.copyOf(availableBits, (capacity + 63) >>> 6);
+        borrowedBy = Arrays.copyOf(borrowedBy, capacity);
+        minHeap = Arrays.copyOf(minHeap, capacity);
+    }
+
+    // Inserts a new book into the tree.
+    @Override
+    public void insertBook(int bookId, String title, String author, boolean isAvailable) {
+        int book = allocate();
+        key[book] = bookId;
+        left[book] = NIL;
+        right[book] = NIL;
+        parent[book] = NIL;
+        bookName[book] = title;
+        authorName[book] = author;
+        setAvailable(book, isAvailable);
+        borrowedBy[book] = -1;
+        minHeap[book] = null;
+        recoloredCount = 0;
+        if (!insert(book)) {
+            release(book);
+        }
+        endRecolor();
+    }
+
+    /**
+     * Inserts a batch of books sorted by ID in linear time, rebuilding the tree exactly as
+     * `RedBlackTree.bulkLoad` does, with the same color flip accounting.
+     *
+     * @param books The books to insert, in strictly ascending ID order.
+     */
+    @Override
+    public void bulkLoad(BookBatch books) {
+        int[] merged = new int[16];
+        int count = 0;
+        int next = 0;
+        int book = root == NIL ? NIL : treeMinimum(root);
+        while (book != NIL || next < books.size) {
+            if (count + 1 >= merged.length) {
+                merged = Arrays.copyOf(merged, merged.length * 2);
+            }
+            if (book == NIL || next < books.size && books.bookIds[next] < key[book]) {
+                merged[count++] = ~newSlot(books, next++); // Complemented: a new book, whose color is not a flip
+            } else {
+                if (next < books.size && books.bookIds[next] == key[book]) {
+                    next++;
+                }
+                merged[count++] = book;
+                book = successor(book);
+            }
+        }
+        int redDepth = 31 - Integer.numberOfLeadingZeros(count + 1);
+        root = build(merged, 0, count - 1, 0, redDepth);
+        parent[root] = NIL;
+    }
+
+    private int newSlot(BookBatch books, int i) {
+        int book = allocate();
+        key[book] = books.bookIds[i];
+        bookName[book] = books.bookNames[i];
+        authorName[book] = books.authorNames[i];
+        setAvailable(book, books.available[i]);
+        borrowedBy[book] = -1;
+        minHeap[book] = null;
+        return book;
+    }
+
+    // Links the slots lo..hi into a balanced subtree at the given depth and returns its root, or NIL if empty.
+    private int build(int[] slots, int lo, int hi, int depth, int redDepth) {
+        if (lo > hi) {
+            return NIL;
+        }
+        int mid = (lo + hi) >>> 1;
+        int book = slots[mid];
+        boolean red = depth == redDepth;
+        if (book < 0) {
+            book = ~book;
+        } else if (isRed(book) != red) {
+            this.flipCount++;
+        }
+        paint(book, red);
+        left[book] = build(slots, lo, mid - 1, depth + 1, redDepth);
+        right[book] = build(slots, mid + 1, hi, depth + 1, redDepth);
+        parent[left[book]] = book;
+        parent[right[book]] = book;
+        return book;
+    }
+
+    // Recolors a node, remembering its color from before the current operation the first time it is touched.
+    private void setColor(int node, boolean red) {
+        if (node != NIL) {
+            int i = 0;
+            while (i < recoloredCount && recolored[i] != node) {
+                i++;
+            }
+            if (i == recoloredCount) {
+                if (recoloredCount == recolored.length) {
+                    recolored = Arrays.copyOf(recolored, recoloredCount * 2);
+                    originalRed = Arrays.copyOf(originalRed, recoloredCount * 2);
+                }
+                recolored[recoloredCount] = node;
+                originalRed[recoloredCount] = isRed(node);
+                recoloredCount++;
+            }
+        }
+        paint(node, red);
+    }
+
+    // Adds one flip for every node whose color at the end of the operation differs from its color before it.
+    private void endRecolor() {
+        for (int i = 0; i < recoloredCount; i++) {
+            if (isRed(recolored[i]) != originalRed[i]) {
+                this.flipCount++;
+            }
+        }
+        recoloredCount = 0;
+    }
+
+    @Override
+    public void getColorFlipCount() {
+        out.append("Color Flip Count : ").append(this.flipCount).append('\n');
+    }
+
+    // Links a new node into the tree and rebalances; returns false if the ID is already present.
+    private boolean insert(int book) {
+        int tempRoot = root;
+        if (root == NIL) {
+            root = book;
+            paint(book, false);
+            parent[book] = NIL;
+            return true;
+        }
+        paint(book, true);
+        while (true) {
+            if (key[book] < key[tempRoot]) {
+                if (left[tempRoot] == NIL) {
+                    left[tempRoot] = book;
+                    parent[book] = tempRoot;
+                    break;
+                } else {
+                    tempRoot = left[tempRoot];
+                }
+            } else if (key[book] == key[tempRoot]) {
+                // Same accounting as RedBlackTree for a duplicate ID.
+                if (!isRed(tempRoot)) {
+                    this.flipCount++;
+                }
+                return false;
+            } else {
+                if (right[tempRoot] == NIL) {
+                    right[tempRoot] = book;
+                    parent[book] = tempRoot;
+                    break;
+                } else {
+                    tempRoot = right[tempRoot];
+                }
+            }
+        }
+        fixInsertViolation(book);
+        return true;
+    }
+
+    private void fixInsertViolation(int book) {
+        while (isRed(parent[book])) {
+            int grandparent = parent[parent[book]];
+            if (parent[book] == left[grandparent]) {
+                int uncle = right[grandparent];
+                if (uncle != NIL && isRed(uncle)) {
+                    setColor(parent[book], false);
+                    if (!isRed(grandparent) && grandparent != root) {
+                        setColor(grandparent, true);
+                    }
+                    setColor(uncle, false);
+                    book = grandparent;
+                    continue;
+                }
+                if (book == right[parent[book]]) {
+                    book = parent[book];
+                    rotateLeft(book);
+                }
+                setColor(parent[book], false);
+                setColor(parent[parent[book]], true);
+                rotateRight(parent[parent[book]]);
+            } else {
+                int uncle = left[grandparent];
+                if (uncle != NIL && isRed(uncle)) {
+                    setColor(parent[book], false);
+                    setColor(grandparent, true);
+                    setColor(uncle, false);
+                    book = grandparent;
+                    continue;
+                }
+                if (book == left[parent[book]]) {
+                    book = parent[book];
+                    rotateRight(book);
+                }
+                setColor(parent[book], false);
+                setColor(parent[parent[book]], true);
+                rotateLeft(parent[parent[book]]);
+            }
+        }
+        setColor(root, false);
+    }
+
+    private void rotateLeft(int book) {
+        if (LibraryMetrics.ENABLED) {
+            LibraryMetrics.recordRotation();
+        }
+        int pivot = right[book];
+        if (parent[book] != NIL) {
+            if (book == left[parent[book]]) {
+                left[parent[book]] = pivot;
+            } else {
+                right[parent[book]] = pivot;
+            }
+            parent[pivot] = parent[book];
+            parent[book] = pivot;
+            if (left[pivot] != NIL) {
+                parent[left[pivot]] = book;
+            }
+            right[book] = left[pivot];
+            left[pivot] = book;
+        } else {
+            right[root] = left[pivot];
+            parent[left[pivot]] = root;
+            parent[root] = pivot;
+            left[pivot] = root;
+            parent[pivot] = NIL;
+            root = pivot;
+        }
+    }
+
+    private void rotateRight(int book) {
+        if (LibraryMetrics.ENABLED) {
+            LibraryMetrics.recordRotation();
+        }
+        int pivot = left[book];
+        if (parent[book] != NIL) {
+            if (book == left[parent[book]]) {
+                left[parent[book]] = pivot;
+            } else {
+                right[parent[book]] = pivot;
+            }
+            parent[pivot] = parent[book];
+            parent[book] = pivot;
+            if (right[pivot] != NIL) {
+                parent[right[pivot]] = book;
+            }
+            left[book] = right[pivot];
+            right[pivot] = book;
+        } else {
+            left[root] = right[pivot];
+            parent[right[pivot]] = root;
+            parent[root] = pivot;
+            right[pivot] = root;
+            parent[pivot] = NIL;
+            root = pivot;
+        }
+    }
+
+    // Returns the slot of the book with the given ID, or NIL if it is not in the tree.
+    private int find(int bookId) {
+        int temp = root;
+        while (temp != NIL && key[temp] != bookId) {
+            temp = bookId < key[temp] ? left[temp] : right[temp];
+        }
+        return temp;
+    }
+
+    @Override
+    public void writeBook(int bookId) {
+        int book = find(bookId);
+        if (book == NIL) {
+            out.append("Book ").append(bookId).append(" not found in the library\n");
+        } else {
+            write(book);
+        }
+    }
+
+    private void write(int book) {
+        RedBlackNode.writeBook(out, key[book], bookName[book], authorName[book], isAvailable(book),
+                borrowedBy[book], minHeap[book]);
+    }
+
+    @Override
+    public void deleteBook(int bookId) {
+        int book = find(bookId);
+        if (book == NIL) {
+            out.append("Book ").append(bookId).append(" is no longer available.\n");
+            return;
+        }
+        recoloredCount = 0;
+        delete(book);
+        endRecolor();
+        MinHeap reservations = minHeap[book];
+        if (reservations == null || reservations.isEmpty()) {
+            out.append("Book ").append(bookId).append(" is no longer available.\n");
+        } else {
+            out.append("Book ").append(bookId).append(" is no longer available. Reservations made by Patrons ");
+            reservations.writePatrons(out);
+            out.append(" have been cancelled!\n");
+        }
+        release(book);
+    }
+
+    private void delete(int z) {
+        int y = z;
+        boolean yOriginalRed = isRed(y);
+        int x;
+        if (left[z] == NIL) {
+            x = right[z];
+            transplant(z, right[z]);
+        } else if (right[z] == NIL) {
+            x = left[z];
+            transplant(z, left[z]);
+        } else {
+            y = treeMaximum(left[z]);
+            yOriginalRed = isRed(y);
+            x = left[y];
+            if (parent[y] == z)
+                parent[x] = y;
+            else {
+                transplant(y, left[y]);
+                left[y] = left[z];
+                parent[left[y]] = y;
+            }
+            transplant(z, y);
+            right[y] = right[z];
+            parent[right[y]] = y;
+            setColor(y, isRed(z));
+        }
+        if (!yOriginalRed) {
+            fixDeleteViolation(x);
+        }
+    }
+
+    private void transplant(int u, int v) {
+        if (parent[u] == NIL) {
+            root = v;
+        } else if (u == left[parent[u]]) {
+            left[parent[u]] = v;
+        } else
+            right[parent[u]] = v;
+        parent[v] = parent[u];
+    }
+
+    private int treeMinimum(int z) {
+        while (left[z] != NIL) {
+            z = left[z];
+        }
+        return z;
+    }
+
+    private int treeMaximum(int z) {
+        while (right[z] != NIL) {
+            z = right[z];
+        }
+        return z;
+    }
+
+    private void fixDeleteViolation(int x) {
+        while (x != root && !isRed(x)) {
+            if (x == left[parent[x]]) {
+                int w = right[parent[x]];
+                if (isRed(w)) {
+                    setColor(w, false);
+                    setColor(parent[x], true);
+                    rotateLeft(parent[x]);
+                    w = right[parent[x]];
+                }
+                if (!isRed(left[w]) && !isRed(right[w])) {
+                    setColor(w, true);
+                    x = parent[x];
+                    continue;
+                } else if (!isRed(right[w])) {
+                    setColor(left[w], false);
+                    setColor(w, true);
+                    rotateRight(w);
+                    w = right[parent[x]];
+                }
+                if (isRed(right[w])) {
+                    setColor(w, isRed(parent[x]));
+                    setColor(parent[x], false);
+                    setColor(right[w], false);
+                    rotateLeft(parent[x]);
+                    x = root;
+                }
+            } else {
+                int w = left[parent[x]];
+                if (isRed(w)) {
+                    setColor(w, false);
+                    setColor(parent[x], true);
+                    rotateRight(parent[x]);
+                    w = left[parent[x]];
+                }
+                if (!isRed(right[w]) && !isRed(left[w])) {
+                    setColor(w, true);
+                    x = parent[x];
+                    continue;
+                } else if (!isRed(left[w])) {
+                    setColor(right[w], false);
+                    setColor(w, true);
+                    rotateLeft(w);
+                    w = left[parent[x]];
+                }
+                if (isRed(left[w])) {
+                    setColor(w, isRed(parent[x]));
+                    setColor(parent[x], false);
+                    setColor(left[w], false);
+                    rotateRight(parent[x]);
+                    x = root;
+                }
+            }
+        }
+        setColor(x, false);
+    }
+
+    // Returns the slot with the next larger ID, or NIL after the last one.
+    private int successor(int book) {
+        if (right[book] != NIL)
+            return treeMinimum(right[book]);
+        int up = parent[book];
+        while (up != NIL && book == right[up]) {
+            book = up;
+            up = parent[up];
+        }
+        return up;
+    }
+
+    // Returns the slot with the smallest ID greater than or equal to bookId, or NIL.
+    private int ceiling(int bookId) {
+        int ceiling = NIL;
+        int temp = root;
+        while (temp != NIL) {
+            if (bookId < key[temp]) {
+                ceiling = temp;
+                temp = left[temp];
+            } else if (bookId == key[temp]) {
+                return temp;
+            } else {
+                temp = right[temp];
+            }
+        }
+        return ceiling;
+    }
+
+    @Override
+    public void printBooks(int bookId1, int bookId2) {
+        for (int book = ceiling(bookId1); book != NIL && key[book] <= bookId2; book = successor(book)) {
+            write(book);
+        }
+    }
+
+    // This engine keeps no subtree sizes, so the books before the page are skipped one successor step at a time.
+    @Override
+    public void printBooks(int bookId1, int bookId2, int offset, int limit) {
+        int book = ceiling(bookId1);
+        for (int i = 0; i < offset && book != NIL && key[book] <= bookId2; i++) {
+            book = successor(book);
+        }
+        for (int i = 0; i < limit && book != NIL && key[book] <= bookId2; i++) {
+            write(book);
+            book = successor(book);
+        }
+    }
+
+    // Counts the books of the range one successor step at a time, as this engine keeps no subtree sizes.
+    @Override
+    public void countBooks(int bookId1, int bookId2) {
+        int count = 0;
+        for (int book = ceiling(bookId1); book != NIL && key[book] <= bookId2; book = successor(book)) {
+            count++;
+        }
+        out.append("Book Count : ").append(count).append('\n');
+    }
+
+    // This engine keeps no secondary indexes, so every book is checked.
+    @Override
+    public void printBooksByAuthor(String author) {
+        for (int book = ceiling(Integer.MIN_VALUE); book != NIL; book = successor(book)) {
+            if (authorName[book].equals(author)) {
+                write(book);
+            }
+        }
+    }
+
+    // Checks every book and sorts the matches by title, as this engine keeps no secondary indexes.
+    @Override
+    public void searchTitle(String prefix) {
+        List<Integer> matches = new ArrayList<>();
+        for (int book = ceiling(Integer.MIN_VALUE); book != NIL; book = successor(book)) {
+            if (bookName[book].startsWith(prefix)) {
+                matches.add(book);
+            }
+        }
+        // The books were found in ID order and the sort is stable, so equal titles stay in ID order.
+        matches.sort(Comparator.comparing(book -> bookName[book]));
+        for (int book : matches) {
+            write(book);
+        }
+    }
+
+    @Override
+    public void findClosestBook(int targetId) {
+        int floor = NIL;
+        int ceiling = NIL;
+        int temp = root;
+        while (temp != NIL) {
+            if (targetId < key[temp]) {
+                ceiling = temp;
+                temp = left[temp];
+            } else if (targetId == key[temp]) {
+                floor = temp;
+                ceiling = temp;
+                break;
+            } else {
+                floor = temp;
+                temp = right[temp];
+            }
+        }
+        if (floor == NIL && ceiling == NIL)
+            return;
+        if (floor == ceiling || ceiling == NIL) {
+            write(floor);
+        } else if (floor == NIL) {
+            write(ceiling);
+        } else {
+            long floorDiff = (long) targetId - key[floor];
+            long ceilingDiff = (long) key[ceiling] - targetId;
+            if (floorDiff <= ceilingDiff)
+                write(floor);
+            if (ceilingDiff <= floorDiff)
+                write(ceiling);
+        }
+    }
+
+    @Override
+    public void borrowBook(int patronId, int bookId, int patronPriority) {
+        int book = find(bookId);
+        if (book == NIL)
+            return;
+        if (isAvailable(book)) {
+            borrowedBy[book] = patronId;
+            setAvailable(book, false);
+            out.append("Book ").append(bookId).append(" Borrowed by Patron ").append(patronId).append('\n');
+        } else if (minHeap[book] != null && minHeap[book].contains(patronId)) {
+            out.append("Book ").append(bookId).append(" Already Reserved by Patron ").append(patronId).append('\n');
+        } else {
+            long sequence = MinHeap.nextSequence(reservationSequence, this::reservationHeaps);
+            reservationSequence = sequence + 1;
+            out.append("Book ").append(bookId).append(" Reserved by Patron ").append(patronId).append('\n');
+            if (minHeap[book] == null) {
+                minHeap[book] = new MinHeap();
+            }
+            minHeap[book].insertNode(patronId, MinHeap.key(patronPriority, sequence));
+            if (LibraryMetrics.ENABLED) {
+                LibraryMetrics.recordReservation(minHeap[book].size());
+            }
+        }
+    }
+
+    // Returns the heaps of every book with reservations; freed slots hold no heap.
+    private List<MinHeap> reservationHeaps() {
+        List<MinHeap> heaps = new ArrayList<>();
+        for (int slot = 1; slot < nextUnused; slot++) {
+            if (minHeap[slot] != null && !minHeap[slot].isEmpty()) {
+                heaps.add(minHeap[slot]);
+            }
+        }
+        return heaps;
+    }
+
+    // Writes the number of books, the height of the tree and the metrics.
+    @Override
+    public void stats() {
+        LibraryMetrics.writeTo(out, count(root), height(root));
+    }
+
+    @Override
+    public void publishGauges() {
+        LibraryMetrics.publishGauges(count(root), height(root));
+    }
+
+    private int count(int book) {
+        return book == NIL ? 0 : 1 + count(left[book]) + count(right[book]);
+    }
+
+    private int height(int book) {
+        return book == NIL ? 0 : 1 + Math.max(height(left[book]), height(right[book]));
+    }
+
+    @Override
+    public void returnBook(int patronId, int bookId) {
+        int book = find(bookId);
+        if (book == NIL)
+            return;
+        if (borrowedBy[book] != patronId)
+            return;
+        if (isAvailable(book))
+            return;
+        borrowedBy[book] = -1;
+        setAvailable(book, true);
+        out.append("Book ").append(bookId).append(" Returned by Patron ").append(patronId).append('\n');
+        if (minHeap[book] != null && !minHeap[book].isEmpty()) {
+            int nextPatronId = minHeap[book].pollPatronId();
+            borrowedBy[book] = nextPatronId;
+            setAvailable(book, false);
+            out.append("Book ").append(bookId).append(" Allotted to Patron ").append(nextPatronId).append('\n');
+        }
+    }
+
+    @Override
+    public void cancelReservation(int patronId, int bookId) {
+        int book = find(bookId);
+        if (book == NIL)
+            return;
+        if (minHeap[book] == null || minHeap[book].remove(patronId) == null) {
+            out.append("Book ").append(bookId).append(" Not Reserved by Patron ").append(patronId).append('\n');
+        } else {
+            out.append("Book ").append(bookId).append(" Reservation Cancelled by Patron ").append(patronId).append('\n');
+        }
+    }
+
+    @Override
+    public void updatePriority(int patronId, int bookId, int newPriority) {
+        int book = find(bookId);
+        if (book == NIL)
+            return;
+        if (minHeap[book] != null && minHeap[book].updatePriority(patronId, newPriority)) {
+            out.append("Book ").append(bookId).append(" Reservation Priority of Patron ").append(patronId)
+                    .append(" Updated to ").append(newPriority).append('\n');
+        } else {
+            out.append("Book ").append(bookId).append(" Not Reserved by Patron ").append(patronId).append('\n');
+        }
+    }
+
+    /**
+     * Writes the counters and every book in ascending ID order with its depth and color, in the format of
+     * `RedBlackTree.writeSnapshot`.
+     *
+     * @param out The snapshot being written.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void writeSnapshot(SnapshotWriter out) throws IOException {
+        out.putVarInt(count(root));
+        out.putVarInt(flipCount);
+        out.putVarLong(reservationSequence);
+        writeSubtree(out, root, 0, Integer.MIN_VALUE - 1L);
+    }
+
+    // Writes a subtree in order and returns the ID of its last book, or previousId if it is empty.
+    private long writeSubtree(SnapshotWriter out, int book, int depth, long previousId) throws IOException {
+        if (book == NIL) {
+            return previousId;
+        }
+        if (depth > RedBlackTree.DEPTH_MASK) {
+            throw new IllegalStateException("Tree too deep for a snapshot");
+        }
+        previousId = writeSubtree(out, left[book], depth + 1, previousId);
+        out.putVarLong(key[book] - previousId);
+        out.putByte(depth | (isRed(book) ? RedBlackTree.RED : 0)
+                | (isAvailable(book) ? RedBlackTree.AVAILABLE : 0));
+        out.putString(bookName[book]);
+        out.putString(authorName[book]);
+        out.putSignedVarInt(borrowedBy[book]);
+        if (minHeap[book] == null) {
+            out.putVarInt(0);
+        } else {
+            minHeap[book].writeSnapshot(out);
+        }
+        return writeSubtree(out, right[book], depth + 1, key[book]);
+    }
+
+    /**
+     * Rebuilds the tree written by `writeSnapshot`; the tree must be empty. As in
+     * `RedBlackTree.readSnapshot`, the right spine of the part built so far is kept on a stack and every
+     * book adopts the stacked books deeper than itself as its left subtree.
+     *
+     * @param in The snapshot being read.
+     * @throws IOException If an I/O error occurs or the data does not describe a tree.
+     */
+    @Override
+    public void readSnapshot(SnapshotReader in) throws IOException {
+        if (root != NIL) {
+            throw new IllegalStateException("A snapshot can only be read into an empty tree");
+        }
+        int count = in.getVarInt();
+        int flips = in.getVarInt();
+        long sequence = in.getVarLong();
+        int[] spine = new int[RedBlackTree.DEPTH_MASK + 1];
+        int[] depths = new int[RedBlackTree.DEPTH_MASK + 1];
+        int top = 0; // Number of books on the spine
+        long bookId = Integer.MIN_VALUE - 1L;
+        for (int i = 0; i < count; i++) {
+            bookId += in.getVarLong();
+            int flags = in.getByte();
+            int depth = flags & RedBlackTree.DEPTH_MASK;
+            if (bookId > Integer.MAX_VALUE || top > 0 && depths[top - 1] == depth) {
+                throw new IOException("Snapshot does not describe a search tree");
+            }
+            int book = allocate();
+            key[book] = (int) bookId;
+            bookName[book] = in.getString();
+            authorName[book] = in.getString();
+            setAvailable(book, (flags & RedBlackTree.AVAILABLE) != 0);
+            paint(book, (flags & RedBlackTree.RED) != 0);
+            borrowedBy[book] = in.getSignedVarInt();
+            MinHeap heap = new MinHeap();
+            heap.readSnapshot(in);
+            minHeap[book] = heap.isEmpty() ? null : heap;
+            int leftChild = NIL;
+            int leftDepth = depth + 1;
+            while (top > 0 && depths[top - 1] > depth) {
+                top--;
+                if (leftChild != NIL && depths[top] + 1 != leftDepth) {
+                    throw new IOException("Snapshot does not describe a search tree");
+                }
+                leftChild = spine[top];
+                leftDepth = depths[top];
+            }
+            if (leftChild != NIL && leftDepth != depth + 1) {
+                throw new IOException("Snapshot does not describe a search tree");
+            }
+            left[book] = leftChild;
+            if (leftChild != NIL) {
+                parent[leftChild] = book;
+            }
+            right[book] = NIL;
+            parent[book] = NIL;
+            if (top > 0) {
+                parent[book] = spine[top - 1];
+                right[parent[book]] = book;
+            }
+            spine[top] = book;
+            depths[top++] = depth;
+        }
+        for (int i = 0; i < top; i++) {
+            if (depths[i] != i) {
+                throw new IOException("Snapshot does not describe a search tree");
+            }
+        }
+        root = top > 0 ? spine[0] : NIL;
+        flipCount = flips;
+        reservationSequence = sequence;
+    }
+
+    @Override
+    public void quit() {
+        out.append("Program Terminated!!\n");
+    }
+}
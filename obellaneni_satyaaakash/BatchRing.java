@@ -0,0 +1,92 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The `BatchRing` class is a bounded single-producer, single-consumer ring of reusable `CommandBatch` slots.
+ * The producer claims the slot at the tail, fills it and publishes it; the consumer takes the slot at the head
+ * and releases it once its commands have run, which makes the slot available to the producer again.
+ * Waiting sides spin briefly and then park, so neither side takes a lock.
+ */
+public class BatchRing {
+    private static final int SPINS = 128;
+    private static final long PARK_NANOS = 20_000;
+
+    private final CommandBatch[] slots;
+    private final int mask;
+    private volatile long head;     // Next slot the consumer takes
+    private volatile long tail;     // Next slot the producer publishes
+    private volatile boolean closed; // Set when the consumer stops early
+
+    /**
+     * Creates a ring of batches.
+     *
+     * @param capacity  Number of batches; must be a power of two.
+     * @param batchSize Number of commands per batch.
+     */
+    public BatchRing(int capacity, int batchSize) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        slots = new CommandBatch[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new CommandBatch(batchSize);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Waits for a free slot and returns it, emptied, for the producer to fill.
+     *
+     * @return The batch to fill, or null if the consumer has closed the ring.
+     */
+    CommandBatch claim() {
+        long t = tail;
+        int spins = 0;
+        while (!closed && t - head >= slots.length) {
+            spins = backOff(spins);
+        }
+        if (closed) {
+            return null;
+        }
+        CommandBatch batch = slots[(int) (t & mask)];
+        batch.reset();
+        return batch;
+    }
+
+    // Makes the claimed batch visible to the consumer.
+    void publish() {
+        tail = tail + 1;
+    }
+
+    /**
+     * Waits for the next published batch.
+     *
+     * @return The oldest batch not yet released.
+     */
+    CommandBatch take() {
+        long h = head;
+        int spins = 0;
+        while (h >= tail) {
+            spins = backOff(spins);
+        }
+        return slots[(int) (h & mask)];
+    }
+
+    // Returns the batch obtained from take to the producer.
+    void release() {
+        head = head + 1;
+    }
+
+    // Tells the producer that no more batches will be taken.
+    void close() {
+        closed = true;
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+            return spins + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return spins;
+    }
+}
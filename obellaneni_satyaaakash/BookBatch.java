@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/**
+ * The `BookBatch` class collects the books inserted between BulkLoad() and EndBulkLoad() so a storage engine
+ * can load them in one pass. The books are kept in parallel arrays in input order until `sortById` orders
+ * them by ID and drops repeated IDs, which is the form `LibraryEngine.bulkLoad` expects.
+ */
+public class BookBatch {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    int[] bookIds = new int[INITIAL_CAPACITY];
+    String[] bookNames = new String[INITIAL_CAPACITY];
+    String[] authorNames = new String[INITIAL_CAPACITY];
+    boolean[] available = new boolean[INITIAL_CAPACITY];
+    int size;
+    boolean open; // True between BulkLoad() and EndBulkLoad()
+
+    /**
+     * Appends a book to the batch.
+     *
+     * @param bookId      The unique identifier of the book.
+     * @param bookName    The title of the book.
+     * @param authorName  The author of the book.
+     * @param isAvailable The availability status of the book.
+     */
+    public void add(int bookId, String bookName, String authorName, boolean isAvailable) {
+        if (size == bookIds.length) {
+            int capacity = size * 2;
+            bookIds = Arrays.copyOf(bookIds, capacity);
+            bookNames = Arrays.copyOf(bookNames, capacity);
+            authorNames = Arrays.copyOf(authorNames, capacity);
+            available = Arrays.copyOf(available, capacity);
+        }
+        bookIds[size] = bookId;
+        bookNames[size] = bookName;
+        authorNames[size] = authorName;
+        available[size] = isAvailable;
+        size++;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Empties the batch, dropping its references to the titles and authors.
+    public void clear() {
+        Arrays.fill(bookNames, 0, size, null);
+        Arrays.fill(authorNames, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Orders the books by ID, keeping only the first occurrence of a repeated ID as a run of InsertBook
+     * commands would. A batch that is already strictly ascending is left as it is after a single scan.
+     */
+    public void sortById() {
+        int i = 1;
+        while (i < size && bookIds[i - 1] < bookIds[i]) {
+            i++;
+        }
+        if (i >= size) {
+            return;
+        }
+        // Sort (ID, input position) pairs packed into longs, so equal IDs stay in input order.
+        long[] order = new long[size];
+        for (int j = 0; j < size; j++) {
+            order[j] = ((long) bookIds[j] << 32) | j;
+        }
+        Arrays.sort(order);
+        int[] ids = new int[size];
+        String[] names = new String[size];
+        String[] authors = new String[size];
+        boolean[] flags = new boolean[size];
+        int kept = 0;
+        for (long entry : order) {
+            int from = (int) entry;
+            if (kept > 0 && ids[kept - 1] == bookIds[from]) {
+                continue;
+            }
+            ids[kept] = bookIds[from];
+            names[kept] = bookNames[from];
+            authors[kept] = authorNames[from];
+            flags[kept] = available[from];
+            kept++;
+        }
+        bookIds = ids;
+        bookNames = names;
+        authorNames = authors;
+        available = flags;
+        size = kept;
+    }
+}
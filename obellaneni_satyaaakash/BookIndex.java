@@ -0,0 +1,163 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The `BookIndex` class is a secondary index over the books of a `RedBlackTree`, ordered by title or by author
+ * and then by book ID. It holds the tree's own nodes, so the books a lookup finds are written without going
+ * back to the ID tree, and a lookup costs O(log n + k) for k matches. The tree adds and removes its books as
+ * they are inserted, deleted, bulk loaded or moved to another shard.
+ */
+class BookIndex {
+    static final Comparator<RedBlackNode> BY_TITLE = Comparator.comparing((RedBlackNode book) -> book.bookName)
+            .thenComparingInt(book -> book.bookId);
+    static final Comparator<RedBlackNode> BY_AUTHOR = Comparator.comparing((RedBlackNode book) -> book.authorName)
+            .thenComparingInt(book -> book.bookId);
+
+    private final boolean byAuthor; // Orders the books by author if true, by title otherwise
+    private final TreeSet<RedBlackNode> books;
+
+    private BookIndex(boolean byAuthor) {
+        this.byAuthor = byAuthor;
+        this.books = new TreeSet<>(byAuthor ? BY_AUTHOR : BY_TITLE);
+    }
+
+    static BookIndex byTitle() {
+        return new BookIndex(false);
+    }
+
+    static BookIndex byAuthor() {
+        return new BookIndex(true);
+    }
+
+    // Adds a book; its title and author must not change while it is indexed.
+    void add(RedBlackNode book) {
+        books.add(book);
+    }
+
+    /**
+     * Adds a batch of books. An empty index sorts the batch and builds its tree from the sorted books in one
+     * linear pass, so the batch costs O(k log k) for k books; otherwise the books are added one at a time in
+     * O(k log n).
+     *
+     * @param batch The books to add; none may be indexed yet.
+     * @param count The number of books at the start of the array to add.
+     */
+    void addAll(RedBlackNode[] batch, int count) {
+        if (!books.isEmpty()) {
+            for (int i = 0; i < count; i++) {
+                books.add(batch[i]);
+            }
+            return;
+        }
+        RedBlackNode[] sorted = Arrays.copyOf(batch, count);
+        Arrays.sort(sorted, books.comparator());
+        books.addAll(new SortedRun(sorted, books.comparator()));
+    }
+
+    void remove(RedBlackNode book) {
+        books.remove(book);
+    }
+
+    boolean contains(RedBlackNode book) {
+        return books.contains(book);
+    }
+
+    void clear() {
+        books.clear();
+    }
+
+    int size() {
+        return books.size();
+    }
+
+    // Returns a view of the books whose key equals the given one, in ID order.
+    NavigableSet<RedBlackNode> equalTo(String key) {
+        return books.subSet(probe(key, Integer.MIN_VALUE), true, probe(key, Integer.MAX_VALUE), true);
+    }
+
+    /**
+     * Returns a view of the books whose key starts with the given prefix, in key order and then in ID order.
+     * The view ends before the smallest string that is greater than every string with the prefix.
+     *
+     * @param prefix The prefix; the empty prefix matches every book.
+     * @return The matching books.
+     */
+    NavigableSet<RedBlackNode> withPrefix(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return books.tailSet(probe(prefix, Integer.MIN_VALUE), true);
+        }
+        String after = prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+        return books.subSet(probe(prefix, Integer.MIN_VALUE), true, probe(after, Integer.MIN_VALUE), false);
+    }
+
+    // Creates a detached node that sorts like a book with the given key and ID.
+    private RedBlackNode probe(String key, int bookId) {
+        RedBlackNode probe = new RedBlackNode(bookId);
+        if (byAuthor) {
+            probe.authorName = key;
+        } else {
+            probe.bookName = key;
+        }
+        return probe;
+    }
+
+    // A sorted array seen as a SortedSet with the index's comparator, which TreeSet.addAll links in linear time.
+    private static final class SortedRun extends AbstractSet<RedBlackNode> implements SortedSet<RedBlackNode> {
+        private final RedBlackNode[] books;
+        private final Comparator<? super RedBlackNode> order;
+
+        SortedRun(RedBlackNode[] books, Comparator<? super RedBlackNode> order) {
+            this.books = books;
+            this.order = order;
+        }
+
+        @Override
+        public Iterator<RedBlackNode> iterator() {
+            return Arrays.asList(books).iterator();
+        }
+
+        @Override
+        public int size() {
+            return books.length;
+        }
+
+        @Override
+        public Comparator<? super RedBlackNode> comparator() {
+            return order;
+        }
+
+        @Override
+        public RedBlackNode first() {
+            return books[0];
+        }
+
+        @Override
+        public RedBlackNode last() {
+            return books[books.length - 1];
+        }
+
+        @Override
+        public SortedSet<RedBlackNode> subSet(RedBlackNode fromElement, RedBlackNode toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<RedBlackNode> headSet(RedBlackNode toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<RedBlackNode> tailSet(RedBlackNode fromElement) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The `BookRangeCursor` class walks the books of a Red-Black Tree whose IDs fall in [lo, hi] in ascending order.
+ * The first book is found with a single ceiling descent and every further book with a successor step over the
+ * parent pointers, so a range holding k books costs O(log n + k) and no list of matches is ever built.
+ * The cursor must not be used after the tree has been modified.
+ */
+public class BookRangeCursor implements Iterator<RedBlackNode> {
+    private final RedBlackTree tree; // Tree being walked
+    private final int hi;            // Inclusive upper bound of the range
+    private RedBlackNode next;       // Next book to return, or null once the range is exhausted
+
+    /**
+     * Positions the cursor on the first book with an ID of at least lo.
+     *
+     * @param tree The Red-Black Tree to walk.
+     * @param lo   Inclusive lower bound of the range.
+     * @param hi   Inclusive upper bound of the range.
+     */
+    BookRangeCursor(RedBlackTree tree, int lo, int hi) {
+        this.tree = tree;
+        this.hi = hi;
+        this.next = bounded(tree.ceilingBook(lo));
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public RedBlackNode next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        RedBlackNode book = next;
+        next = bounded(tree.successor(book));
+        return book;
+    }
+
+    // Returns the book if it is still inside the range, otherwise null.
+    private RedBlackNode bounded(RedBlackNode book) {
+        return book != null && book.bookId <= hi ? book : null;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * The `BookSnapshot` class is an immutable copy of a book's state taken at one point in time.
+ * Snapshots are returned by reads that may run concurrently with writers, so callers never hold a
+ * reference to a node that is still being modified.
+ */
+public final class BookSnapshot {
+    private final int bookId;
+    private final String bookName;
+    private final String authorName;
+    private final boolean isAvailable;
+    private final int borrowedBy;     // -1 if the book is not borrowed
+    private final int[] reservations; // Patron IDs in allotment order
+
+    public BookSnapshot(int bookId, String bookName, String authorName, boolean isAvailable, int borrowedBy,
+                        int[] reservations) {
+        this.bookId = bookId;
+        this.bookName = bookName;
+        this.authorName = authorName;
+        this.isAvailable = isAvailable;
+        this.borrowedBy = borrowedBy;
+        this.reservations = reservations;
+    }
+
+    // Copies the current state of a book node.
+    static BookSnapshot of(RedBlackNode book) {
+        return new BookSnapshot(book.bookId, book.bookName, book.authorName, book.isAvailable, book.borrowedBy,
+                book.minHeap.copyPatronsInOrder());
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public String getBookName() {
+        return bookName;
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    public boolean isAvailable() {
+        return isAvailable;
+    }
+
+    public int getBorrowedBy() {
+        return borrowedBy;
+    }
+
+    // Returns the patron IDs with reservations, in allotment order.
+    public int[] getReservations() {
+        return reservations.clone();
+    }
+
+    // Writes the book in the format of PrintBook.
+    public void writeTo(OutputSink out) {
+        RedBlackNode.writeBookFields(out, bookId, bookName, authorName, isAvailable, borrowedBy);
+        for (int i = 0; i < reservations.length; i++) {
+            if (i > 0)
+                out.append(',');
+            out.append(reservations[i]);
+        }
+        out.append("]\n\n");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilderSink res = new StringBuilderSink();
+        writeTo(res);
+        return res.toString();
+    }
+}
@@ -0,0 +1,27 @@
+import java.io.IOException;
+
+/**
+ * The `Checkpointable` interface is implemented by storage engines whose complete state can be written to a
+ * snapshot and read back, which lets a `WriteAheadLog` discard the commands logged before its checkpoint and
+ * lets a run start from a saved catalog instead of replaying the commands that built it.
+ * The state read back must behave exactly like the state written, including the tree shape that later
+ * color flips depend on.
+ */
+public interface Checkpointable {
+
+    /**
+     * Writes the complete state of the engine.
+     *
+     * @param out The snapshot being written.
+     * @throws IOException If an I/O error occurs.
+     */
+    void writeSnapshot(SnapshotWriter out) throws IOException;
+
+    /**
+     * Replaces the state of an empty engine with the one written by `writeSnapshot`.
+     *
+     * @param in The snapshot being read.
+     * @throws IOException If an I/O error occurs or the data is malformed.
+     */
+    void readSnapshot(SnapshotReader in) throws IOException;
+}
@@ -0,0 +1,19 @@
+/**
+ * The `Command` class holds one decoded gatorLibrary command.
+ * A parser fills the same instance for every line, so only the fields used by the current opcode are meaningful:
+ * `bookId` for book commands, `bookId2` as the upper bound of PrintBooks and CountBooks, `offset` and `limit`
+ * for the page of a four-argument PrintBooks, `patronId` and `priority` for the borrowing and reservation
+ * commands, the title, author and availability for InsertBook, and the author or title prefix searched for.
+ */
+public class Command {
+    Opcode opcode;        // Operation to perform
+    int bookId;           // Book the command refers to (lower bound for PrintBooks)
+    int bookId2;          // Upper bound for PrintBooks and CountBooks
+    int offset;           // Books of the range skipped by a paged PrintBooks
+    int limit;            // Largest number of books written by a paged PrintBooks
+    int patronId;         // Patron borrowing, returning or reserving the book
+    int priority;         // Reservation priority for BorrowBook and UpdatePriority
+    String bookName;      // Title of the book for InsertBook, title prefix for SearchTitle
+    String authorName;    // Author of the book for InsertBook, author searched for by PrintBooksByAuthor
+    boolean isAvailable;  // Availability of the book, InsertBook only
+}
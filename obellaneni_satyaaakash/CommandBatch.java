@@ -0,0 +1,28 @@
+/**
+ * The `CommandBatch` class is a reusable block of decoded commands passed from the reader stage to the
+ * executor stage of the command pipeline.
+ */
+public class CommandBatch {
+    final Command[] commands; // Preallocated commands, filled in input order
+    int size;                 // Number of commands filled in this batch
+    boolean last;             // True if no batch follows this one
+    Exception error;          // Failure that stopped the reader after the commands in this batch
+
+    public CommandBatch(int capacity) {
+        commands = new Command[capacity];
+        for (int i = 0; i < capacity; i++) {
+            commands[i] = new Command();
+        }
+    }
+
+    // Prepares the batch to be filled again.
+    void reset() {
+        size = 0;
+        last = false;
+        error = null;
+    }
+
+    boolean isFull() {
+        return size == commands.length;
+    }
+}
@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The `CommandParser` class decodes gatorLibrary commands directly from the bytes of an input stream.
+ * Lines are scanned in a reusable buffer without regular expressions or per-line strings: the opcode is
+ * dispatched on its first byte and length, integer arguments are decoded in place, and strings are only
+ * created for the title and author of InsertBook and for the author or title prefix of a search. Quoted
+ * arguments may contain commas and parentheses. A parser created without a stream decodes lines that its
+ * caller has framed itself, as the server does.
+ */
+public class CommandParser {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] INSERT_BOOK = ascii("InsertBook");
+    private static final byte[] PRINT_BOOK = ascii("PrintBook");
+    private static final byte[] PRINT_BOOKS = ascii("PrintBooks");
+    private static final byte[] COUNT_BOOKS = ascii("CountBooks");
+    private static final byte[] PRINT_BOOKS_BY_AUTHOR = ascii("PrintBooksByAuthor");
+    private static final byte[] SEARCH_TITLE = ascii("SearchTitle");
+    private static final byte[] BORROW_BOOK = ascii("BorrowBook");
+    private static final byte[] RETURN_BOOK = ascii("ReturnBook");
+    private static final byte[] DELETE_BOOK = ascii("DeleteBook");
+    private static final byte[] FIND_CLOSEST_BOOK = ascii("FindClosestBook");
+    private static final byte[] COLOR_FLIP_COUNT = ascii("ColorFlipCount");
+    private static final byte[] CANCEL_RESERVATION = ascii("CancelReservation");
+    private static final byte[] UPDATE_PRIORITY = ascii("UpdatePriority");
+    private static final byte[] BULK_LOAD = ascii("BulkLoad");
+    private static final byte[] END_BULK_LOAD = ascii("EndBulkLoad");
+    private static final byte[] QUIT = ascii("Quit");
+    private static final byte[] STATS = ascii("Stats");
+    private static final byte[] YES = ascii("Yes");
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int position; // Start of the unparsed bytes in the buffer
+    private int limit;    // End of the valid bytes in the buffer
+    private boolean eof;
+    private long lineNumber;
+
+    // Position of the argument scanner within the current line, and the end of the line.
+    private int cursor;
+    private int lineEnd;
+
+    // Bounds of the argument most recently found by nextField.
+    private int fieldStart;
+    private int fieldEnd;
+
+    public CommandParser(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CommandParser(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    // Creates a parser for lines passed to parse; next must not be called on it.
+    public CommandParser() {
+        this(null, 0);
+    }
+
+    /**
+     * Decodes one line held in the given array, which may end with '\r'. The parser only reads the array
+     * while decoding.
+     *
+     * @param line    The bytes holding the line.
+     * @param start   Index of the first byte of the line.
+     * @param end     Index after the last byte of the line, excluding the '\n'.
+     * @param command The command to fill.
+     * @throws IllegalArgumentException If the line is malformed.
+     */
+    public void parse(byte[] line, int start, int end, Command command) {
+        buffer = line;
+        if (end > start && line[end - 1] == '\r') {
+            end--;
+        }
+        parseLine(start, end, command);
+    }
+
+    /**
+     * Decodes the next non-blank line into the given command.
+     *
+     * @param command The command to fill.
+     * @return False when the end of the input has been reached, true otherwise.
+     * @throws IOException If an I/O error occurs while reading.
+     */
+    public boolean next(Command command) throws IOException {
+        while (true) {
+            int newline = findNewline();
+            if (newline < 0) {
+                return false;
+            }
+            int start = position;
+            int end = newline;
+            position = newline < limit ? newline + 1 : limit;
+            lineNumber++;
+            if (end > start && buffer[end - 1] == '\r') {
+                end--;
+            }
+            if (end > start) {
+                parseLine(start, end, command);
+                return true;
+            }
+        }
+    }
+
+    // Returns the number of the line most recently returned by next, starting at 1.
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    // Returns the index of the next '\n' (or of the end of the final unterminated line), or -1 at end of input.
+    private int findNewline() throws IOException {
+        int scanFrom = position;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            if (eof) {
+                return position < limit ? limit : -1;
+            }
+            scanFrom = limit - position;
+            fill();
+        }
+    }
+
+    // Moves the unparsed bytes to the front of the buffer, growing it for long lines, and reads more input.
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            byte[] larger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, position, larger, 0, remaining);
+            buffer = larger;
+        } else if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private void parseLine(int start, int end, Command command) {
+        int open = start;
+        while (open < end && buffer[open] != '(') {
+            open++;
+        }
+        command.opcode = open == end ? Opcode.INVALID : opcode(start, open - start);
+        command.bookName = null;
+        command.authorName = null;
+        cursor = open + 1;
+        lineEnd = end;
+        switch (command.opcode) {
+            case INSERT_BOOK:
+                command.bookId = nextInt();
+                command.bookName = nextString();
+                command.authorName = nextString();
+                command.isAvailable = nextFieldEquals(YES);
+                break;
+            case PRINT_BOOK:
+            case DELETE_BOOK:
+            case FIND_CLOSEST_BOOK:
+                command.bookId = nextInt();
+                break;
+            case PRINT_BOOKS:
+                command.bookId = nextInt();
+                command.bookId2 = nextInt();
+                if (cursor > 0 && buffer[cursor - 1] == ',') {
+                    // PrintBooks(lo, hi, offset, limit) asks for one page of the range.
+                    command.opcode = Opcode.PRINT_BOOKS_PAGE;
+                    command.offset = nextInt();
+                    command.limit = nextInt();
+                }
+                break;
+            case COUNT_BOOKS:
+                command.bookId = nextInt();
+                command.bookId2 = nextInt();
+                break;
+            case PRINT_BOOKS_BY_AUTHOR:
+                command.authorName = nextString();
+                break;
+            case SEARCH_TITLE:
+                command.bookName = nextString();
+                break;
+            case BORROW_BOOK:
+            case UPDATE_PRIORITY:
+                command.patronId = nextInt();
+                command.bookId = nextInt();
+                command.priority = nextInt();
+                break;
+            case RETURN_BOOK:
+            case CANCEL_RESERVATION:
+                command.patronId = nextInt();
+                command.bookId = nextInt();
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Maps the opcode bytes to an Opcode using the first byte and the length, then confirms the whole name.
+    private Opcode opcode(int start, int length) {
+        if (length == 0) {
+            return Opcode.INVALID;
+        }
+        switch (buffer[start]) {
+            case 'I':
+                return matches(start, length, INSERT_BOOK) ? Opcode.INSERT_BOOK : Opcode.INVALID;
+            case 'P':
+                if (length == PRINT_BOOK.length) {
+                    return matches(start, length, PRINT_BOOK) ? Opcode.PRINT_BOOK : Opcode.INVALID;
+                } else if (length == PRINT_BOOKS_BY_AUTHOR.length) {
+                    return matches(start, length, PRINT_BOOKS_BY_AUTHOR) ? Opcode.PRINT_BOOKS_BY_AUTHOR
+                            : Opcode.INVALID;
+                }
+                return matches(start, length, PRINT_BOOKS) ? Opcode.PRINT_BOOKS : Opcode.INVALID;
+            case 'B':
+                if (length == BULK_LOAD.length) {
+                    return matches(start, length, BULK_LOAD) ? Opcode.BULK_LOAD : Opcode.INVALID;
+                }
+                return matches(start, length, BORROW_BOOK) ? Opcode.BORROW_BOOK : Opcode.INVALID;
+            case 'R':
+                return matches(start, length, RETURN_BOOK) ? Opcode.RETURN_BOOK : Opcode.INVALID;
+            case 'D':
+                return matches(start, length, DELETE_BOOK) ? Opcode.DELETE_BOOK : Opcode.INVALID;
+            case 'F':
+                return matches(start, length, FIND_CLOSEST_BOOK) ? Opcode.FIND_CLOSEST_BOOK : Opcode.INVALID;
+            case 'C':
+                if (length == COLOR_FLIP_COUNT.length) {
+                    return matches(start, length, COLOR_FLIP_COUNT) ? Opcode.COLOR_FLIP_COUNT : Opcode.INVALID;
+                } else if (length == COUNT_BOOKS.length) {
+                    return matches(start, length, COUNT_BOOKS) ? Opcode.COUNT_BOOKS : Opcode.INVALID;
+                }
+                return matches(start, length, CANCEL_RESERVATION) ? Opcode.CANCEL_RESERVATION : Opcode.INVALID;
+            case 'U':
+                return matches(start, length, UPDATE_PRIORITY) ? Opcode.UPDATE_PRIORITY : Opcode.INVALID;
+            case 'E':
+                return matches(start, length, END_BULK_LOAD) ? Opcode.END_BULK_LOAD : Opcode.INVALID;
+            case 'Q':
+                return matches(start, length, QUIT) ? Opcode.QUIT : Opcode.INVALID;
+            case 'S':
+                if (length == SEARCH_TITLE.length) {
+                    return matches(start, length, SEARCH_TITLE) ? Opcode.SEARCH_TITLE : Opcode.INVALID;
+                }
+                return matches(start, length, STATS) ? Opcode.STATS : Opcode.INVALID;
+            default:
+                return Opcode.INVALID;
+        }
+    }
+
+    private boolean matches(int start, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Decodes the next argument as an integer, skipping surrounding spaces and quotes.
+    private int nextInt() {
+        skipBlanks();
+        int i = cursor;
+        boolean negative = false;
+        if (i < lineEnd && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        int digitsStart = i;
+        long value = 0;
+        while (i < lineEnd && buffer[i] >= '0' && buffer[i] <= '9') {
+            value = value * 10 + (buffer[i] - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw malformed("integer out of range");
+            }
+            i++;
+        }
+        if (i == digitsStart) {
+            throw malformed("expected an integer");
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw malformed("integer out of range");
+        }
+        cursor = i;
+        skipBlanks();
+        endField();
+        return (int) value;
+    }
+
+    // Decodes the next argument as a trimmed string; a quoted argument runs to its closing quote.
+    private String nextString() {
+        nextField();
+        return new String(buffer, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8);
+    }
+
+    // Checks whether the next argument equals the given bytes, without creating a string.
+    private boolean nextFieldEquals(byte[] expected) {
+        nextField();
+        return matches(fieldStart, fieldEnd - fieldStart, expected);
+    }
+
+    // Finds the start and end of the next argument and moves past it.
+    private void nextField() {
+        while (cursor < lineEnd && buffer[cursor] == ' ') {
+            cursor++;
+        }
+        int start;
+        int end;
+        if (cursor < lineEnd && buffer[cursor] == '"') {
+            start = cursor + 1;
+            end = start;
+            while (end < lineEnd && buffer[end] != '"') {
+                end++;
+            }
+            cursor = end < lineEnd ? end + 1 : end;
+            skipBlanks();
+        } else {
+            start = cursor;
+            end = start;
+            while (end < lineEnd && buffer[end] != ',' && buffer[end] != ')') {
+                end++;
+            }
+            cursor = end;
+        }
+        while (end > start && buffer[end - 1] == ' ') {
+            end--;
+        }
+        while (start < end && buffer[start] == ' ') {
+            start++;
+        }
+        endField();
+        fieldStart = start;
+        fieldEnd = end;
+    }
+
+    private void skipBlanks() {
+        while (cursor < lineEnd && (buffer[cursor] == ' ' || buffer[cursor] == '\t' || buffer[cursor] == '"')) {
+            cursor++;
+        }
+    }
+
+    // Moves past the separator that ends the current argument.
+    private void endField() {
+        if (cursor < lineEnd && (buffer[cursor] == ',' || buffer[cursor] == ')')) {
+            cursor++;
+        } else if (cursor < lineEnd) {
+            throw malformed("unexpected character '" + (char) buffer[cursor] + "'");
+        }
+    }
+
+    private IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("Malformed command on line " + lineNumber + ": " + reason);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
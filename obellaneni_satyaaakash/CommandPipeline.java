@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The `CommandPipeline` class runs the parse stage of gatorLibrary on its own reader thread.
+ * The reader decodes lines into the commands of `CommandBatch`es and publishes them through a bounded
+ * `BatchRing`; the single executor thread takes the batches in order, so commands run exactly as in the
+ * sequential mode. A parse failure is delivered after the commands that preceded it.
+ */
+public class CommandPipeline implements AutoCloseable {
+    private static final int RING_CAPACITY = 16;
+    private static final int BATCH_SIZE = 1024;
+
+    private final BatchRing ring = new BatchRing(RING_CAPACITY, BATCH_SIZE);
+    private final Thread reader;
+    private final InputStream input;
+
+    /**
+     * Starts the reader thread over the given input.
+     *
+     * @param input The raw command input; closed when the pipeline is closed.
+     */
+    public CommandPipeline(InputStream input) {
+        this.input = input;
+        this.reader = new Thread(this::read, "gatorLibrary-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    // Reader stage: fills and publishes batches until the input ends, fails, or the executor stops.
+    private void read() {
+        CommandParser parser = new CommandParser(input, 1024 * 1024);
+        while (true) {
+            CommandBatch batch = ring.claim();
+            if (batch == null) {
+                return;
+            }
+            try {
+                while (!batch.isFull() && parser.next(batch.commands[batch.size])) {
+                    batch.size++;
+                }
+                batch.last = !batch.isFull();
+            } catch (IOException | RuntimeException e) {
+                batch.error = e;
+                batch.last = true;
+            }
+            ring.publish();
+            if (batch.last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for the next batch of commands. It must be handed back with release before the next call.
+     *
+     * @return The next batch, in input order.
+     */
+    public CommandBatch take() {
+        return ring.take();
+    }
+
+    // Hands the batch obtained from take back to the reader.
+    public void release() {
+        ring.release();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ring.close();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        input.close();
+    }
+}
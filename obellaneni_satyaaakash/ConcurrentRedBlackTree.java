@@ -0,0 +1,449 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * The `ConcurrentRedBlackTree` class makes a `RedBlackTree` safe to use from several threads.
+ * Every operation that modifies the tree runs under the write lock of a `StampedLock`, so writers are
+ * serialized. Reads take `BookSnapshot`s of the books they need without any lock: they first run under an
+ * optimistic stamp and are retried under the read lock only if a writer interfered. Optimistic walks are
+ * bounded in length and any exception they hit is treated as interference, since they may observe a tree in
+ * mid-rotation. They never move the tree's lookup finger, which only writers update. The read commands of
+ * `LibraryEngine` are served the same way and write their snapshots afterwards under a short output lock,
+ * which writers hold while they run, so the lines of two commands never interleave. The author and title
+ * searches walk `TreeSet` indexes that cannot be read optimistically, so they hold the shared read lock.
+ */
+class ConcurrentRedBlackTree implements LibraryEngine, Checkpointable {
+    // A walk longer than this cannot happen in a valid tree of int keys, whose height is at most 2 * 32.
+    private static final int MAX_DESCENT = 2 * Integer.SIZE + 2;
+    // Books a range walk collects between checks that no writer has interfered.
+    private static final int VALIDATE_INTERVAL = 64;
+
+    private final RedBlackTree tree;
+    private final RedBlackNode nil;
+    private final StampedLock lock = new StampedLock();
+    private final Object outputLock = new Object(); // Held while writing to the sink
+
+    // Constructor wraps a new Red-Black Tree writing its results to the given sink.
+    public ConcurrentRedBlackTree(OutputSink out) {
+        this(new RedBlackTree(out));
+    }
+
+    // Constructor wraps an existing tree, which must no longer be used directly.
+    public ConcurrentRedBlackTree(RedBlackTree tree) {
+        this.tree = tree;
+        this.nil = tree.getNil();
+    }
+
+    /**
+     * Returns a snapshot of the book with the given ID.
+     *
+     * @param bookId The ID to look up.
+     * @return The book's state, or null if it is not in the library.
+     */
+    public BookSnapshot lookupBook(int bookId) {
+        return read(stamp -> {
+            RedBlackNode book = find(bookId);
+            return book == null ? null : BookSnapshot.of(book);
+        });
+    }
+
+    /**
+     * Returns snapshots of the books with IDs in [lo, hi], in ID order.
+     *
+     * @param lo Inclusive lower bound of the range.
+     * @param hi Inclusive upper bound of the range.
+     * @return The books in the range.
+     */
+    public List<BookSnapshot> lookupRange(int lo, int hi) {
+        return read(stamp -> collect(ceiling(lo), hi, Long.MAX_VALUE, stamp));
+    }
+
+    /**
+     * Returns snapshots of a page of the books with IDs in [lo, hi]: the books after the first offset ones, in
+     * ID order, and at most limit of them. The first book of the page is found by rank.
+     *
+     * @param lo     Inclusive lower bound of the range.
+     * @param hi     Inclusive upper bound of the range.
+     * @param offset Number of books of the range to skip; negative counts as 0.
+     * @param limit  Largest number of books to return.
+     * @return The books of the page.
+     */
+    public List<BookSnapshot> lookupPage(int lo, int hi, int offset, int limit) {
+        return read(stamp -> {
+            if (lo > hi || limit <= 0) {
+                return new ArrayList<>();
+            }
+            long first = (long) rank(lo) + Math.max(offset, 0);
+            long end = Math.min(rank(hi) + (find(hi) != null ? 1 : 0), first + limit);
+            return first < end ? collect(select((int) first), hi, end - first, stamp) : new ArrayList<>();
+        });
+    }
+
+    /**
+     * Returns the number of books with IDs in [lo, hi].
+     *
+     * @param lo Inclusive lower bound of the range.
+     * @param hi Inclusive upper bound of the range.
+     * @return The number of books in the range.
+     */
+    public int countRange(int lo, int hi) {
+        return read(stamp -> lo > hi ? 0 : rank(hi) - rank(lo) + (find(hi) != null ? 1 : 0));
+    }
+
+    // Snapshots up to max books from the given one on, stopping after hi. A stale link seen mid-rotation can
+    // lead the walk back to a book it has passed, so a walk that stops ascending, or that a writer has
+    // interfered with, is given up early.
+    private List<BookSnapshot> collect(RedBlackNode book, int hi, long max, long stamp) {
+        List<BookSnapshot> books = new ArrayList<>();
+        long previous = Long.MIN_VALUE;
+        for (; book != null && book.bookId <= hi && books.size() < max; book = successor(book)) {
+            if (book.bookId <= previous || (books.size() % VALIDATE_INTERVAL == VALIDATE_INTERVAL - 1
+                    && !lock.validate(stamp))) {
+                throw new IllegalStateException("Tree changed during an optimistic read");
+            }
+            previous = book.bookId;
+            books.add(BookSnapshot.of(book));
+        }
+        return books;
+    }
+
+    /**
+     * Returns snapshots of the book(s) closest to targetId: one book, or both neighbours in ID order on a tie.
+     *
+     * @param targetId The ID to search around.
+     * @return The closest books; empty if the library is empty.
+     */
+    public List<BookSnapshot> lookupClosest(int targetId) {
+        return read(stamp -> {
+            List<BookSnapshot> books = new ArrayList<>(2);
+            RedBlackNode floor = null;
+            RedBlackNode ceiling = null;
+            RedBlackNode temp = tree.getRoot();
+            for (int steps = 0; temp != nil; steps++) {
+                checkDescent(steps);
+                if (targetId < temp.bookId) {
+                    ceiling = temp;
+                    temp = temp.left;
+                } else if (targetId == temp.bookId) {
+                    floor = temp;
+                    ceiling = temp;
+                    break;
+                } else {
+                    floor = temp;
+                    temp = temp.right;
+                }
+            }
+            long floorDiff = floor == null ? Long.MAX_VALUE : (long) targetId - floor.bookId;
+            long ceilingDiff = ceiling == null ? Long.MAX_VALUE : (long) ceiling.bookId - targetId;
+            if (floor != null && floorDiff <= ceilingDiff)
+                books.add(BookSnapshot.of(floor));
+            if (ceiling != null && ceiling != floor && ceilingDiff <= floorDiff)
+                books.add(BookSnapshot.of(ceiling));
+            return books;
+        });
+    }
+
+    // Runs a read optimistically, falling back to the read lock if a writer interfered. The reader is given
+    // the stamp it runs under, so a long walk can validate it along the way.
+    private <T> T read(LongFunction<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.apply(stamp);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A concurrent writer left the tree in an intermediate state; retry under the lock.
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.apply(stamp);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static void checkDescent(int steps) {
+        if (steps > MAX_DESCENT) {
+            throw new IllegalStateException("Tree changed during an optimistic read");
+        }
+    }
+
+    private RedBlackNode find(int bookId) {
+        RedBlackNode temp = tree.getRoot();
+        for (int steps = 0; temp != nil; steps++) {
+            checkDescent(steps);
+            if (bookId == temp.bookId) {
+                return temp;
+            }
+            temp = bookId < temp.bookId ? temp.left : temp.right;
+        }
+        return null;
+    }
+
+    // Returns the number of books with an ID smaller than the given one.
+    private int rank(int bookId) {
+        int rank = 0;
+        RedBlackNode temp = tree.getRoot();
+        for (int steps = 0; temp != nil; steps++) {
+            checkDescent(steps);
+            if (bookId <= temp.bookId) {
+                temp = temp.left;
+            } else {
+                rank += temp.left.size + 1;
+                temp = temp.right;
+            }
+        }
+        return rank;
+    }
+
+    // Returns the book of rank k, or null if there is none.
+    private RedBlackNode select(int k) {
+        RedBlackNode temp = tree.getRoot();
+        for (int steps = 0; temp != nil; steps++) {
+            checkDescent(steps);
+            if (k < temp.left.size) {
+                temp = temp.left;
+            } else if (k == temp.left.size) {
+                return temp;
+            } else {
+                k -= temp.left.size + 1;
+                temp = temp.right;
+            }
+        }
+        return null;
+    }
+
+    private RedBlackNode ceiling(int bookId) {
+        RedBlackNode ceiling = null;
+        RedBlackNode temp = tree.getRoot();
+        for (int steps = 0; temp != nil; steps++) {
+            checkDescent(steps);
+            if (bookId < temp.bookId) {
+                ceiling = temp;
+                temp = temp.left;
+            } else if (bookId == temp.bookId) {
+                return temp;
+            } else {
+                temp = temp.right;
+            }
+        }
+        return ceiling;
+    }
+
+    private RedBlackNode successor(RedBlackNode book) {
+        int steps = 0;
+        if (book.right != nil) {
+            RedBlackNode temp = book.right;
+            while (temp.left != nil) {
+                checkDescent(steps++);
+                temp = temp.left;
+            }
+            return temp;
+        }
+        RedBlackNode parent = book.parent;
+        while (parent != nil && book == parent.right) {
+            checkDescent(steps++);
+            book = parent;
+            parent = parent.parent;
+        }
+        return parent == nil ? null : parent;
+    }
+
+    // Runs a writer under the write lock and the output lock.
+    private void write(Runnable writer) {
+        long stamp = lock.writeLock();
+        try {
+            synchronized (outputLock) {
+                writer.run();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Takes snapshots of the given books under the read lock.
+    private List<BookSnapshot> readLocked(Supplier<Collection<RedBlackNode>> books) {
+        long stamp = lock.readLock();
+        try {
+            List<BookSnapshot> snapshots = new ArrayList<>();
+            for (RedBlackNode book : books.get()) {
+                snapshots.add(BookSnapshot.of(book));
+            }
+            return snapshots;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Writes the books in the format of PrintBook.
+    private void render(List<BookSnapshot> books) {
+        synchronized (outputLock) {
+            for (BookSnapshot book : books) {
+                book.writeTo(tree.getOutput());
+            }
+        }
+    }
+
+    @Override
+    public OutputSink getOutput() {
+        return tree.getOutput();
+    }
+
+    @Override
+    public void insertBook(int bookId, String bookName, String authorName, boolean isAvailable) {
+        write(() -> tree.insertBook(bookId, bookName, authorName, isAvailable));
+    }
+
+    @Override
+    public void bulkLoad(BookBatch books) {
+        write(() -> tree.bulkLoad(books));
+    }
+
+    @Override
+    public void writeBook(int bookId) {
+        BookSnapshot book = lookupBook(bookId);
+        synchronized (outputLock) {
+            if (book == null) {
+                tree.getOutput().append("Book ").append(bookId).append(" not found in the library\n");
+            } else {
+                book.writeTo(tree.getOutput());
+            }
+        }
+    }
+
+    @Override
+    public void printBooks(int bookId1, int bookId2) {
+        render(lookupRange(bookId1, bookId2));
+    }
+
+    @Override
+    public void printBooks(int bookId1, int bookId2, int offset, int limit) {
+        render(lookupPage(bookId1, bookId2, offset, limit));
+    }
+
+    @Override
+    public void countBooks(int bookId1, int bookId2) {
+        int count = countRange(bookId1, bookId2);
+        synchronized (outputLock) {
+            tree.getOutput().append("Book Count : ").append(count).append('\n');
+        }
+    }
+
+    @Override
+    public void printBooksByAuthor(String author) {
+        render(readLocked(() -> tree.booksByAuthor(author)));
+    }
+
+    @Override
+    public void searchTitle(String prefix) {
+        render(readLocked(() -> tree.booksWithTitlePrefix(prefix)));
+    }
+
+    @Override
+    public void borrowBook(int patronId, int bookId, int patronPriority) {
+        write(() -> tree.borrowBook(patronId, bookId, patronPriority));
+    }
+
+    @Override
+    public void returnBook(int patronId, int bookId) {
+        write(() -> tree.returnBook(patronId, bookId));
+    }
+
+    @Override
+    public void deleteBook(int bookId) {
+        write(() -> tree.deleteBook(bookId));
+    }
+
+    @Override
+    public void findClosestBook(int targetId) {
+        render(lookupClosest(targetId));
+    }
+
+    @Override
+    public void getColorFlipCount() {
+        int flips = read(stamp -> tree.flipCount);
+        synchronized (outputLock) {
+            tree.getOutput().append("Color Flip Count : ").append(flips).append('\n');
+        }
+    }
+
+    @Override
+    public void stats() {
+        write(tree::stats);
+    }
+
+    // Measures the tree under the read lock, so lookups keep running meanwhile.
+    @Override
+    public void publishGauges() {
+        long stamp = lock.readLock();
+        try {
+            tree.publishGauges();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void cancelReservation(int patronId, int bookId) {
+        write(() -> tree.cancelReservation(patronId, bookId));
+    }
+
+    @Override
+    public void updatePriority(int patronId, int bookId, int newPriority) {
+        write(() -> tree.updatePriority(patronId, bookId, newPriority));
+    }
+
+    @Override
+    public void quit() {
+        write(tree::quit);
+    }
+
+    @Override
+    public void printStats(PrintStream err) {
+        write(() -> tree.printStats(err));
+    }
+
+    // Writes a snapshot under the read lock, so lookups keep running while it is written.
+    @Override
+    public void writeSnapshot(SnapshotWriter out) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            tree.writeSnapshot(out);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void readSnapshot(SnapshotReader in) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            tree.readSnapshot(in);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Checks the tree and reservation invariants under the read lock.
+     *
+     * @throws IllegalStateException If any invariant is violated.
+     */
+    void checkInvariants() {
+        long stamp = lock.readLock();
+        try {
+            tree.checkInvariants();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The `ConcurrentStress` class exercises a `ConcurrentRedBlackTree` with one writer thread and a growing
+ * number of reader threads, checking the tree and reservation invariants and the consistency of every
+ * snapshot read, and reports the read throughput reached at each reader count.
+ * Usage: java ConcurrentStress [maxReaders] [secondsPerStep] [bookCount]
+ */
+public class ConcurrentStress {
+
+    public static void main(String[] args) throws Exception {
+        int maxReaders = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int books = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        ConcurrentRedBlackTree library = new ConcurrentRedBlackTree(new NullSink());
+        for (int id = 0; id < books; id += 2) {
+            library.insertBook(id, "Title " + id, "Author " + (id % 97), true);
+        }
+
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            LongAdder reads = new LongAdder();
+            LongAdder writes = new LongAdder();
+            Thread writer = new Thread(() -> write(library, books, running, writes));
+            Thread[] readerThreads = new Thread[readers];
+            for (int i = 0; i < readers; i++) {
+                long seed = i;
+                readerThreads[i] = new Thread(() -> read(library, books, seed, running, reads));
+            }
+            writer.start();
+            for (Thread reader : readerThreads) {
+                reader.start();
+            }
+            Thread.sleep(seconds * 1000L);
+            running.set(false);
+            writer.join();
+            for (Thread reader : readerThreads) {
+                reader.join();
+            }
+            library.checkInvariants();
+            System.out.printf("readers=%d reads/s=%d writes/s=%d invariants=ok%n", readers,
+                    reads.sum() / seconds, writes.sum() / seconds);
+        }
+    }
+
+    // Writer: random inserts, deletes, borrows, returns and reservation changes, with periodic invariant checks.
+    private static void write(ConcurrentRedBlackTree library, int books, AtomicBoolean running, LongAdder writes) {
+        Random random = new Random(-1);
+        while (running.get()) {
+            int id = random.nextInt(books);
+            int patron = random.nextInt(50);
+            switch (random.nextInt(6)) {
+                case 0:
+                    library.insertBook(id, "Title " + id, "Author " + (id % 97), random.nextBoolean());
+                    break;
+                case 1:
+                    library.deleteBook(id);
+                    break;
+                case 2:
+                case 3:
+                    library.borrowBook(patron, id, random.nextInt(5));
+                    break;
+                case 4:
+                    library.returnBook(patron, id);
+                    break;
+                default:
+                    library.cancelReservation(patron, id);
+                    break;
+            }
+            writes.increment();
+            if ((writes.sum() & 0xFFFF) == 0) {
+                library.checkInvariants();
+            }
+        }
+    }
+
+    // Reader: point, range and closest-book lookups; every snapshot must be internally consistent.
+    private static void read(ConcurrentRedBlackTree library, int books, long seed, AtomicBoolean running,
+                             LongAdder reads) {
+        Random random = new Random(seed);
+        while (running.get()) {
+            int id = random.nextInt(books);
+            switch (random.nextInt(3)) {
+                case 0:
+                    check(library.lookupBook(id));
+                    break;
+                case 1:
+                    List<BookSnapshot> range = library.lookupRange(id, id + 20);
+                    for (int i = 0; i < range.size(); i++) {
+                        check(range.get(i));
+                        if (i > 0 && range.get(i - 1).getBookId() >= range.get(i).getBookId()) {
+                            throw new IllegalStateException("Range out of order at " + range.get(i).getBookId());
+                        }
+                    }
+                    break;
+                default:
+                    for (BookSnapshot book : library.lookupClosest(id)) {
+                        check(book);
+                    }
+                    break;
+            }
+            reads.increment();
+        }
+    }
+
+    private static void check(BookSnapshot book) {
+        if (book != null && book.isAvailable() && book.getReservations().length > 0) {
+            throw new IllegalStateException("Snapshot of available book " + book.getBookId() + " has reservations");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The `DurableLibrary` class logs every mutating command to a `WriteAheadLog` before passing it on to the
+ * engine it wraps, and checkpoints the engine after a configurable number of logged commands, on Quit and
+ * when it is closed. Logging and applying a command happen together under this object's lock, so the log
+ * order is the order in which the engine saw the commands. The engine must be `Checkpointable`, so that every
+ * checkpoint empties the log and recovery only replays the commands logged after it.
+ */
+class DurableLibrary implements LibraryEngine, Closeable {
+    private final LibraryEngine engine;
+    private final Checkpointable checkpointed; // The same engine, as written to checkpoints
+    private final WriteAheadLog log;
+    private final long checkpointInterval; // Logged commands between checkpoints, 0 for none
+    private long commandsSinceCheckpoint;
+
+    /**
+     * Wraps an engine already restored by opening the log.
+     *
+     * @param engine             The engine receiving the commands; must be `Checkpointable`.
+     * @param log                The log the commands are written to.
+     * @param checkpointInterval Logged commands between checkpoints, or 0 to checkpoint only on Quit and close.
+     */
+    DurableLibrary(LibraryEngine engine, WriteAheadLog log, long checkpointInterval) {
+        if (!(engine instanceof Checkpointable)) {
+            throw new IllegalArgumentException("A logged engine must support checkpoints");
+        }
+        this.engine = engine;
+        this.checkpointed = (Checkpointable) engine;
+        this.log = log;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    @Override
+    public OutputSink getOutput() {
+        return engine.getOutput();
+    }
+
+    @Override
+    public synchronized void insertBook(int bookId, String bookName, String authorName, boolean isAvailable) {
+        log.logInsertBook(bookId, bookName, authorName, isAvailable);
+        engine.insertBook(bookId, bookName, authorName, isAvailable);
+        logged();
+    }
+
+    @Override
+    public synchronized void bulkLoad(BookBatch books) {
+        log.logBulkLoad(books);
+        engine.bulkLoad(books);
+        logged();
+    }
+
+    @Override
+    public void writeBook(int bookId) {
+        engine.writeBook(bookId);
+    }
+
+    @Override
+    public void printBooks(int bookId1, int bookId2) {
+        engine.printBooks(bookId1, bookId2);
+    }
+
+    @Override
+    public void printBooks(int bookId1, int bookId2, int offset, int limit) {
+        engine.printBooks(bookId1, bookId2, offset, limit);
+    }
+
+    @Override
+    public void countBooks(int bookId1, int bookId2) {
+        engine.countBooks(bookId1, bookId2);
+    }
+
+    @Override
+    public void printBooksByAuthor(String author) {
+        engine.printBooksByAuthor(author);
+    }
+
+    @Override
+    public void searchTitle(String prefix) {
+        engine.searchTitle(prefix);
+    }
+
+    @Override
+    public synchronized void borrowBook(int patronId, int bookId, int patronPriority) {
+        log.logBorrowBook(patronId, bookId, patronPriority);
+        engine.borrowBook(patronId, bookId, patronPriority);
+        logged();
+    }
+
+    @Override
+    public synchronized void returnBook(int patronId, int bookId) {
+        log.logReturnBook(patronId, bookId);
+        engine.returnBook(patronId, bookId);
+        logged();
+    }
+
+    @Override
+    public synchronized void deleteBook(int bookId) {
+        log.logDeleteBook(bookId);
+        engine.deleteBook(bookId);
+        logged();
+    }
+
+    @Override
+    public void findClosestBook(int targetId) {
+        engine.findClosestBook(targetId);
+    }
+
+    @Override
+    public void getColorFlipCount() {
+        engine.getColorFlipCount();
+    }
+
+    @Override
+    public void stats() {
+        engine.stats();
+    }
+
+    @Override
+    public void publishGauges() {
+        engine.publishGauges();
+    }
+
+    @Override
+    public synchronized void cancelReservation(int patronId, int bookId) {
+        log.logCancelReservation(patronId, bookId);
+        engine.cancelReservation(patronId, bookId);
+        logged();
+    }
+
+    @Override
+    public synchronized void updatePriority(int patronId, int bookId, int newPriority) {
+        log.logUpdatePriority(patronId, bookId, newPriority);
+        engine.updatePriority(patronId, bookId, newPriority);
+        logged();
+    }
+
+    // Checkpoints the library on Quit, so the next run starts from the checkpoint alone.
+    @Override
+    public synchronized void quit() {
+        checkpoint();
+        engine.quit();
+    }
+
+    @Override
+    public void printStats(PrintStream err) {
+        engine.printStats(err);
+    }
+
+    // Counts a logged command and checkpoints once the interval is reached.
+    private void logged() {
+        commandsSinceCheckpoint++;
+        if (checkpointInterval > 0 && commandsSinceCheckpoint >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    // Writes a checkpoint of the engine and empties the log.
+    public synchronized void checkpoint() {
+        try {
+            log.checkpoint(checkpointed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        commandsSinceCheckpoint = 0;
+    }
+
+    // Checkpoints the library if commands were logged since the last checkpoint, such as those other clients
+    // sent after a Quit in server mode, and closes the log.
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (commandsSinceCheckpoint > 0) {
+                checkpoint();
+            }
+        } finally {
+            log.close();
+        }
+    }
+}
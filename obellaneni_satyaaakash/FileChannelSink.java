@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The `FileChannelSink` class is an `OutputSink` that encodes output as UTF-8 straight into one reusable
+ * byte buffer and writes it to a file through a `FileChannel`.
+ * Heap use is bounded by the buffer size no matter how much output is produced, and everything flushed
+ * before a crash is already in the file. In background mode a writer thread performs the channel writes
+ * while the caller keeps encoding into a second buffer.
+ */
+public class FileChannelSink implements OutputSink {
+    private static final ByteBuffer END_OF_OUTPUT = ByteBuffer.allocate(0); // Stops the writer thread
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private final FlushPolicy policy;
+    private final byte[] digits = new byte[11]; // Scratch space for the digits of an int
+    private int commandsSinceFlush;
+    private boolean closed;
+
+    // Background mode only: full buffers waiting to be written, and written buffers ready for reuse.
+    private final BlockingQueue<ByteBuffer> pending;
+    private final BlockingQueue<ByteBuffer> spare;
+    private final Thread writer;
+    private volatile IOException writeError;
+
+    /**
+     * Creates (or truncates) the output file.
+     *
+     * @param path   The file to write.
+     * @param policy When to write the buffer out.
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileChannelSink(Path path, FlushPolicy policy) throws IOException {
+        this(path, policy, false);
+    }
+
+    /**
+     * Creates (or truncates) the output file.
+     *
+     * @param path       The file to write.
+     * @param policy     When to write the buffer out.
+     * @param background True to write buffers from a separate writer thread.
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileChannelSink(Path path, FlushPolicy policy, boolean background) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(policy.bufferSize());
+        this.policy = policy;
+        if (background) {
+            pending = new ArrayBlockingQueue<>(2);
+            spare = new ArrayBlockingQueue<>(2);
+            spare.add(ByteBuffer.allocate(policy.bufferSize()));
+            writer = new Thread(this::writeLoop, "gatorLibrary-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            pending = null;
+            spare = null;
+            writer = null;
+        }
+    }
+
+    @Override
+    public OutputSink append(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                ensure(4);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                put((byte) '?'); // Unpaired surrogate, as the standard UTF-8 encoder replaces it.
+            } else {
+                ensure(3);
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        long v = value;
+        if (v < 0) {
+            put((byte) '-');
+            v = -v;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        ensure(digits.length - pos);
+        buffer.put(digits, pos, digits.length - pos);
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        if (c < 0x80) {
+            put((byte) c);
+        } else {
+            append(String.valueOf(c));
+        }
+        return this;
+    }
+
+    @Override
+    public void endCommand() throws IOException {
+        if (policy.getMode() == FlushPolicy.Mode.COMMANDS && ++commandsSinceFlush >= policy.getThreshold()) {
+            flush();
+        } else if (policy.getMode() == FlushPolicy.Mode.BYTES && buffer.position() >= policy.getThreshold()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        commandsSinceFlush = 0;
+        if (writer == null) {
+            write(buffer);
+            return;
+        }
+        checkWriter();
+        if (buffer.position() == 0) {
+            return;
+        }
+        try {
+            pending.put(buffer);
+            buffer = spare.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while handing output to the writer", e);
+        }
+    }
+
+    // Writes the contents of a buffer to the channel and empties it.
+    private void write(ByteBuffer full) throws IOException {
+        full.flip();
+        while (full.hasRemaining()) {
+            channel.write(full);
+        }
+        full.clear();
+    }
+
+    // Writer stage of background mode: writes handed-over buffers in order until told to stop.
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer full = pending.take();
+                if (full == END_OF_OUTPUT) {
+                    return;
+                }
+                if (writeError == null) {
+                    try {
+                        write(full);
+                    } catch (IOException e) {
+                        writeError = e;
+                    }
+                }
+                full.clear();
+                spare.put(full);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Rethrows a failure of the writer thread on the caller's thread.
+    private void checkWriter() throws IOException {
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            if (writer != null) {
+                pending.put(END_OF_OUTPUT);
+                writer.join();
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writer", e);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Puts a single byte, writing the buffer out first if it is full.
+    private void put(byte b) {
+        ensure(1);
+        buffer.put(b);
+    }
+
+    // Makes room for the given number of bytes by writing the buffer out when needed.
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
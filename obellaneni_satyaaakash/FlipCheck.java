@@ -0,0 +1,39 @@
+import java.util.Random;
+
+/**
+ * The `FlipCheck` class runs a random sequence of inserts and deletes against a `RedBlackTree` in the
+ * differential verification mode, so the incremental color flip counter is compared with the full-tree
+ * snapshot diff after every operation. A mismatch ends the run with an IllegalStateException naming the
+ * counts; the tree invariants are checked along the way.
+ * Usage: java -DgatorLibrary.verifyFlips=true FlipCheck [seed] [operations] [books]
+ */
+public class FlipCheck {
+
+    public static void main(String[] args) {
+        if (!RedBlackTree.VERIFY_FLIPS) {
+            System.err.println("Run with -DgatorLibrary.verifyFlips=true");
+            System.exit(2);
+        }
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int books = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+
+        Random random = new Random(seed);
+        RedBlackTree tree = new RedBlackTree(new NullSink());
+        for (int i = 1; i <= operations; i++) {
+            int id = random.nextInt(books);
+            // Inserts slightly outnumber deletes, so the tree grows and shrinks around a steady size.
+            if (random.nextInt(9) < 5) {
+                tree.insertBook(id, "Title " + id, "Author " + (id % 31), true);
+            } else {
+                tree.deleteBook(id);
+            }
+            if (i % 1_000 == 0) {
+                tree.checkInvariants();
+            }
+        }
+        tree.checkInvariants();
+        System.out.printf("seed=%d operations=%d books=%d flips=%d flipCheck=ok%n", seed, operations,
+                tree.size(), tree.flipCount);
+    }
+}
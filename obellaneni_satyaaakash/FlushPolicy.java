@@ -0,0 +1,78 @@
+/**
+ * The `FlushPolicy` class decides when a buffered `OutputSink` writes its buffer out.
+ * Output is always written when the buffer is full and when the sink is closed (on Quit or at the end of the
+ * input); a policy can additionally flush after a number of buffered bytes or processed commands.
+ */
+public class FlushPolicy {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The condition that triggers a flush.
+     */
+    public enum Mode {
+        BYTES, COMMANDS, QUIT
+    }
+
+    private final Mode mode;
+    private final int threshold; // Bytes or commands between flushes, unused for QUIT
+
+    private FlushPolicy(Mode mode, int threshold) {
+        if (mode != Mode.QUIT && threshold <= 0) {
+            throw new IllegalArgumentException("Flush threshold must be positive: " + threshold);
+        }
+        this.mode = mode;
+        this.threshold = threshold;
+    }
+
+    // Flushes whenever at least the given number of bytes is buffered.
+    public static FlushPolicy bytes(int bytes) {
+        return new FlushPolicy(Mode.BYTES, bytes);
+    }
+
+    // Flushes after every given number of commands.
+    public static FlushPolicy commands(int commands) {
+        return new FlushPolicy(Mode.COMMANDS, commands);
+    }
+
+    // Flushes only when the buffer is full and when the sink is closed.
+    public static FlushPolicy onQuit() {
+        return new FlushPolicy(Mode.QUIT, 0);
+    }
+
+    /**
+     * Parses a policy written as "bytes:N", "commands:N" or "quit".
+     *
+     * @param spec The policy specification.
+     * @return The parsed policy.
+     */
+    public static FlushPolicy parse(String spec) {
+        int colon = spec.indexOf(':');
+        String name = colon < 0 ? spec : spec.substring(0, colon);
+        if (name.equals("quit") && colon < 0) {
+            return onQuit();
+        }
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid flush policy: " + spec);
+        }
+        int threshold = Integer.parseInt(spec.substring(colon + 1));
+        if (name.equals("bytes")) {
+            return bytes(threshold);
+        } else if (name.equals("commands")) {
+            return commands(threshold);
+        }
+        throw new IllegalArgumentException("Invalid flush policy: " + spec);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    // Size of the reusable byte buffer a sink should allocate for this policy.
+    public int bufferSize() {
+        return mode == Mode.BYTES ? Math.max(threshold, 16) : DEFAULT_BUFFER_SIZE;
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Random;
+
+/**
+ * The `KeyDistribution` class draws the book IDs of a generated workload from [1, books]: uniformly, from a
+ * Zipfian distribution in which a few hot books receive most of the operations, or in ascending runs of
+ * consecutive IDs that start at random places.
+ */
+public abstract class KeyDistribution {
+    protected final int books;
+
+    protected KeyDistribution(int books) {
+        if (books <= 0) {
+            throw new IllegalArgumentException("Number of books must be positive: " + books);
+        }
+        this.books = books;
+    }
+
+    /**
+     * Draws the next book ID.
+     *
+     * @param random The source of randomness.
+     * @return A book ID in [1, books].
+     */
+    public abstract int next(Random random);
+
+    // Every ID is equally likely.
+    public static KeyDistribution uniform(int books) {
+        return new KeyDistribution(books) {
+            @Override
+            public int next(Random random) {
+                return random.nextInt(this.books) + 1;
+            }
+        };
+    }
+
+    /**
+     * Returns a Zipfian distribution, in which the k-th most popular book is drawn with a probability
+     * proportional to 1 / k^exponent. Popularity ranks are spread over the ID range by a fixed permutation, so
+     * the hot books are not all neighbours. Sampling follows Gray et al., "Quickly Generating Billion-Record
+     * Synthetic Databases", after an O(books) setup.
+     *
+     * @param books    The number of book IDs.
+     * @param exponent The skew, in (0, 1); 0.99 is the usual choice.
+     * @return The distribution.
+     */
+    public static KeyDistribution zipf(int books, double exponent) {
+        if (!(exponent > 0 && exponent < 1)) {
+            throw new IllegalArgumentException("Zipf exponent must be in (0, 1): " + exponent);
+        }
+        double zetaN = 0;
+        for (int i = 1; i <= books; i++) {
+            zetaN += 1 / Math.pow(i, exponent);
+        }
+        double zeta2 = 1 + 1 / Math.pow(2, exponent);
+        double alpha = 1 / (1 - exponent);
+        double eta = (1 - Math.pow(2.0 / books, 1 - exponent)) / (1 - zeta2 / zetaN);
+        double half = 1 + Math.pow(0.5, exponent);
+        long multiplier = 0x9E3779B1L % books;
+        while (gcd(multiplier, books) != 1) {
+            multiplier++;
+        }
+        long scramble = multiplier;
+        double zeta = zetaN;
+        return new KeyDistribution(books) {
+            @Override
+            public int next(Random random) {
+                double u = random.nextDouble();
+                double uz = u * zeta;
+                long rank;
+                if (uz < 1) {
+                    rank = 0;
+                } else if (uz < half) {
+                    rank = 1;
+                } else {
+                    rank = Math.min(this.books - 1, (long) (this.books * Math.pow(eta * u - eta + 1, alpha)));
+                }
+                return (int) (rank * scramble % this.books) + 1;
+            }
+        };
+    }
+
+    /**
+     * Returns runs of consecutive IDs, each starting at a random ID and wrapping around after the last one.
+     *
+     * @param books     The number of book IDs.
+     * @param runLength The number of IDs in a run.
+     * @return The distribution.
+     */
+    public static KeyDistribution sequential(int books, int runLength) {
+        if (runLength <= 0) {
+            throw new IllegalArgumentException("Run length must be positive: " + runLength);
+        }
+        return new KeyDistribution(books) {
+            private int position;  // Zero-based offset of the next ID
+            private int remaining; // IDs left in the current run
+
+            @Override
+            public int next(Random random) {
+                if (remaining == 0) {
+                    position = random.nextInt(this.books);
+                    remaining = runLength;
+                }
+                int bookId = position + 1;
+                position = (position + 1) % this.books;
+                remaining--;
+                return bookId;
+            }
+        };
+    }
+
+    /**
+     * Parses a distribution written as "uniform", "zipf:EXPONENT" or "sequential:RUN_LENGTH".
+     *
+     * @param spec  The distribution specification.
+     * @param books The number of book IDs.
+     * @return The parsed distribution.
+     */
+    public static KeyDistribution parse(String spec, int books) {
+        if (spec.equals("uniform")) {
+            return uniform(books);
+        } else if (spec.startsWith("zipf:")) {
+            return zipf(books, Double.parseDouble(spec.substring("zipf:".length())));
+        } else if (spec.startsWith("sequential:")) {
+            return sequential(books, Integer.parseInt(spec.substring("sequential:".length())));
+        }
+        throw new IllegalArgumentException("Invalid key distribution: " + spec);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.PrintStream;
+
+/**
+ * The `LibraryEngine` interface lists the library operations driven by gatorLibrary commands.
+ * Each operation writes its results to the engine's `OutputSink`, so different storage engines can be
+ * run against the same command files and their outputs compared.
+ */
+public interface LibraryEngine {
+
+    // Returns the sink that receives the results of this engine's operations.
+    OutputSink getOutput();
+
+    // Inserts a new book; a book whose ID is already present is ignored.
+    void insertBook(int bookId, String bookName, String authorName, boolean isAvailable);
+
+    /**
+     * Inserts the books of a batch sorted by `BookBatch.sortById`; books whose ID is already present are ignored.
+     * This fallback inserts them one at a time. Engines that build the tree in a single pass override it, and
+     * then count as color flips only the books already in the tree whose color the load changes.
+     *
+     * @param books The books to insert, in strictly ascending ID order.
+     */
+    default void bulkLoad(BookBatch books) {
+        for (int i = 0; i < books.size; i++) {
+            insertBook(books.bookIds[i], books.bookNames[i], books.authorNames[i], books.available[i]);
+        }
+    }
+
+    // Writes the details of a book, or a not-found message.
+    void writeBook(int bookId);
+
+    // Writes every book with an ID in [bookId1, bookId2], in ID order.
+    void printBooks(int bookId1, int bookId2);
+
+    // Writes the books of [bookId1, bookId2] after the first offset ones, in ID order, and at most limit of them.
+    void printBooks(int bookId1, int bookId2, int offset, int limit);
+
+    // Writes the number of books with an ID in [bookId1, bookId2].
+    void countBooks(int bookId1, int bookId2);
+
+    // Writes the books by the given author, in ID order.
+    void printBooksByAuthor(String author);
+
+    // Writes the books whose title starts with the given prefix, in title order and then in ID order.
+    void searchTitle(String prefix);
+
+    // Lends a book to a patron, or queues a reservation if it is already borrowed.
+    void borrowBook(int patronId, int bookId, int patronPriority);
+
+    // Returns a book and allots it to the first reservation, if any.
+    void returnBook(int patronId, int bookId);
+
+    // Deletes a book and cancels its reservations.
+    void deleteBook(int bookId);
+
+    // Writes the book(s) whose ID is closest to targetId.
+    void findClosestBook(int targetId);
+
+    // Writes the number of color flips made by the Red-Black Tree so far.
+    void getColorFlipCount();
+
+    // Writes the number of books, the height of the tree and, with -DgatorLibrary.metrics=true, the metrics.
+    void stats();
+
+    // Cancels a patron's reservation of a book.
+    void cancelReservation(int patronId, int bookId);
+
+    // Changes the priority of a patron's reservation of a book.
+    void updatePriority(int patronId, int bookId, int newPriority);
+
+    // Writes the termination message.
+    void quit();
+
+    // Publishes the number of books and the tree height to LibraryMetrics; called on the thread running the commands.
+    void publishGauges();
+
+    // Writes engine statistics, such as lookup costs, for -DgatorLibrary.stats=true; engines without any write nothing.
+    default void printStats(PrintStream err) {
+    }
+}
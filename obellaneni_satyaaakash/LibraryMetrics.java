@@ -0,0 +1,239 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The `LibraryMetrics` class collects hot-path metrics of the library when -DgatorLibrary.metrics=true: the
+ * count and latency of every command by opcode, the rotations of the trees, and the waitlist lengths that
+ * reservations join. The counters are `LongAdder`s and the histograms `StripedHistogram`s, so engines used from
+ * several threads can record without locks or allocation. Every recording site tests the constant `ENABLED`
+ * first, which the JIT compiler folds away when metrics are off.
+ * The metrics are written by the Stats() command and published over JMX by `register`. The book count and tree
+ * height are measured on demand by the thread running the commands, as the single-threaded engines allow no other.
+ */
+public final class LibraryMetrics implements LibraryMetricsMXBean {
+    static final boolean ENABLED = Boolean.getBoolean("gatorLibrary.metrics");
+
+    private static final Opcode[] OPCODES = Opcode.values();
+    private static final LongAdder ROTATIONS = new LongAdder();
+    private static final StripedHistogram[] LATENCIES = ENABLED ? histograms(OPCODES.length) : null;
+    private static final StripedHistogram WAITLIST_DEPTHS = ENABLED ? new StripedHistogram() : null;
+
+    // How long a JMX read of the gauges waits for the engine to publish them.
+    private static final long GAUGE_TIMEOUT_NANOS = 1_000_000_000L;
+
+    // Gauges published by the engine at the last request or Stats() command; guarded by GAUGES.
+    private static final Object GAUGES = new Object();
+    private static long bookCount = -1;
+    private static int treeHeight = -1;
+    private static long gaugeGeneration;
+    private static volatile boolean gaugesRequested;
+    private static Runnable requestGauges;
+
+    private LibraryMetrics() {
+    }
+
+    private static StripedHistogram[] histograms(int count) {
+        StripedHistogram[] histograms = new StripedHistogram[count];
+        for (int i = 0; i < count; i++) {
+            histograms[i] = new StripedHistogram();
+        }
+        return histograms;
+    }
+
+    // Records a command and the nanoseconds it took.
+    static void recordCommand(Opcode opcode, long nanos) {
+        LATENCIES[opcode.ordinal()].record(nanos);
+    }
+
+    static void recordRotation() {
+        ROTATIONS.increment();
+    }
+
+    // Records a reservation that made a waitlist the given length.
+    static void recordReservation(int waitlistLength) {
+        WAITLIST_DEPTHS.record(waitlistLength);
+    }
+
+    /**
+     * Writes the output of the Stats() command: the size and height of the engine's tree, which are also kept
+     * for JMX, followed by the metrics.
+     *
+     * @param out    The sink receiving the results.
+     * @param books  The number of books.
+     * @param height The height of the tree; for a sharded engine, of its tallest shard.
+     */
+    static void writeTo(OutputSink out, long books, int height) {
+        publishGauges(books, height);
+        out.append("Books : ").append(Long.toString(books)).append(", Tree Height : ").append(height).append('\n');
+        if (!ENABLED) {
+            out.append("Metrics disabled; run with -DgatorLibrary.metrics=true\n");
+            return;
+        }
+        out.append("Rotations : ").append(Long.toString(ROTATIONS.sum())).append('\n');
+        for (int i = 0; i < OPCODES.length; i++) {
+            StripedHistogram latencies = LATENCIES[i];
+            long count = latencies.getCount();
+            if (count > 0) {
+                out.append(OPCODES[i].name()).append(" : ").append(Long.toString(count))
+                        .append(" commands, p50 ").append(Long.toString(latencies.percentile(0.5)))
+                        .append(" ns, p99 ").append(Long.toString(latencies.percentile(0.99)))
+                        .append(" ns, p999 ").append(Long.toString(latencies.percentile(0.999))).append(" ns\n");
+            }
+        }
+        out.append("Reservations : ").append(Long.toString(WAITLIST_DEPTHS.getCount()))
+                .append(", waitlist length p50 ").append(Long.toString(WAITLIST_DEPTHS.percentile(0.5)))
+                .append(", p99 ").append(Long.toString(WAITLIST_DEPTHS.percentile(0.99)))
+                .append(", max ").append(Long.toString(WAITLIST_DEPTHS.getMax())).append('\n');
+    }
+
+    // Returns whether JMX is waiting for the engine to publish its gauges.
+    static boolean gaugesRequested() {
+        return gaugesRequested;
+    }
+
+    /**
+     * Publishes the size and height of the engine's tree and wakes the JMX reads waiting for them.
+     *
+     * @param books  The number of books.
+     * @param height The height of the tree; for a sharded engine, of its tallest shard.
+     */
+    static void publishGauges(long books, int height) {
+        synchronized (GAUGES) {
+            bookCount = books;
+            treeHeight = height;
+            gaugesRequested = false;
+            gaugeGeneration++;
+            GAUGES.notifyAll();
+        }
+    }
+
+    // Asks the engine to publish its gauges and waits for them; on timeout the last published ones stand.
+    private static void refreshGauges() {
+        synchronized (GAUGES) {
+            long generation = gaugeGeneration;
+            gaugesRequested = true;
+            if (requestGauges != null) {
+                requestGauges.run();
+            }
+            long deadline = System.nanoTime() + GAUGE_TIMEOUT_NANOS;
+            long remaining;
+            while (gaugeGeneration == generation && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    GAUGES.wait(remaining / 1_000_000 + 1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server as "gatorLibrary:type=Metrics".
+     *
+     * @param wake Makes the thread running the commands call `LibraryEngine.publishGauges` while it is idle, or
+     *             null if that thread only checks `gaugesRequested` after each command.
+     * @throws JMException If the name is already registered or the bean is rejected.
+     */
+    static void register(Runnable wake) throws JMException {
+        synchronized (GAUGES) {
+            requestGauges = wake;
+        }
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new LibraryMetrics(),
+                new ObjectName("gatorLibrary:type=Metrics"));
+    }
+
+    private static Map<String, Long> byOpcode(ToLongFunction<StripedHistogram> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        if (ENABLED) {
+            for (int i = 0; i < OPCODES.length; i++) {
+                if (LATENCIES[i].getCount() > 0) {
+                    values.put(OPCODES[i].name(), value.applyAsLong(LATENCIES[i]));
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        return byOpcode(StripedHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Nanos() {
+        return byOpcode(latencies -> latencies.percentile(0.5));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Nanos() {
+        return byOpcode(latencies -> latencies.percentile(0.99));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP999Nanos() {
+        return byOpcode(latencies -> latencies.percentile(0.999));
+    }
+
+    @Override
+    public long getRotations() {
+        return ROTATIONS.sum();
+    }
+
+    @Override
+    public long getReservations() {
+        return ENABLED ? WAITLIST_DEPTHS.getCount() : 0;
+    }
+
+    @Override
+    public long getWaitlistDepthP50() {
+        return ENABLED ? WAITLIST_DEPTHS.percentile(0.5) : 0;
+    }
+
+    @Override
+    public long getWaitlistDepthP99() {
+        return ENABLED ? WAITLIST_DEPTHS.percentile(0.99) : 0;
+    }
+
+    @Override
+    public long getWaitlistDepthMax() {
+        return ENABLED ? WAITLIST_DEPTHS.getMax() : 0;
+    }
+
+    @Override
+    public long getBookCount() {
+        refreshGauges();
+        synchronized (GAUGES) {
+            return bookCount;
+        }
+    }
+
+    @Override
+    public int getTreeHeight() {
+        refreshGauges();
+        synchronized (GAUGES) {
+            return treeHeight;
+        }
+    }
+
+    @Override
+    public void reset() {
+        ROTATIONS.reset();
+        if (ENABLED) {
+            for (StripedHistogram latencies : LATENCIES) {
+                latencies.reset();
+            }
+            WAITLIST_DEPTHS.reset();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import java.util.Map;
+
+/**
+ * The `LibraryMetricsMXBean` interface is the JMX view of the `LibraryMetrics` collected with
+ * -DgatorLibrary.metrics=true, registered as "gatorLibrary:type=Metrics". Maps are keyed by opcode name.
+ */
+public interface LibraryMetricsMXBean {
+
+    boolean isEnabled();
+
+    // Number of commands executed, by opcode.
+    Map<String, Long> getCommandCounts();
+
+    // Latency percentiles of the commands in nanoseconds, by opcode.
+    Map<String, Long> getLatencyP50Nanos();
+
+    Map<String, Long> getLatencyP99Nanos();
+
+    Map<String, Long> getLatencyP999Nanos();
+
+    // Rotations made by all trees to rebalance after inserts and deletes.
+    long getRotations();
+
+    // Reservations queued, and the length of the waitlist each one joined.
+    long getReservations();
+
+    long getWaitlistDepthP50();
+
+    long getWaitlistDepthP99();
+
+    long getWaitlistDepthMax();
+
+    // Number of books and height of the tree, measured by the engine when read; if the engine does not answer
+    // within a second, the last measured values, or -1 before any.
+    long getBookCount();
+
+    int getTreeHeight();
+
+    // Clears the counters and histograms.
+    void reset();
+}
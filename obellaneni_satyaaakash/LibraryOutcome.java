@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+/**
+ * The `LibraryOutcome` class is the typed result of a `LibraryService` command that changes a book: what
+ * happened, to which book and patron, and the patrons affected along the way. It carries the same facts as the
+ * lines the batch mode writes for the command.
+ */
+public final class LibraryOutcome {
+
+    /**
+     * What a command did.
+     */
+    public enum Status {
+        INSERTED,            // InsertBook added the book
+        DUPLICATE,           // InsertBook found a book with the same ID and left it unchanged
+        NOT_FOUND,           // The book is not in the library
+        BORROWED,            // BorrowBook lent the available book to the patron
+        RESERVED,            // BorrowBook put the patron on the waitlist of the borrowed book
+        ALREADY_RESERVED,    // BorrowBook found the patron already on the waitlist
+        RETURNED,            // ReturnBook took the book back; see getAllottedTo
+        NOT_BORROWED,        // ReturnBook found the book not borrowed by the patron
+        CANCELLED,           // CancelReservation removed the patron from the waitlist
+        NOT_RESERVED,        // CancelReservation or UpdatePriority found the patron not on the waitlist
+        PRIORITY_UPDATED,    // UpdatePriority changed the patron's priority
+        DELETED              // DeleteBook removed the book; see getCancelledReservations
+    }
+
+    private static final int[] NONE = new int[0];
+
+    private final Status status;
+    private final int bookId;
+    private final int patronId;                // -1 for commands without a patron
+    private final int allottedTo;              // Patron the returned book passed to, or -1
+    private final int[] cancelledReservations; // Patrons whose reservations a delete cancelled
+
+    LibraryOutcome(Status status, int bookId, int patronId) {
+        this(status, bookId, patronId, -1, NONE);
+    }
+
+    LibraryOutcome(Status status, int bookId, int patronId, int allottedTo, int[] cancelledReservations) {
+        this.status = status;
+        this.bookId = bookId;
+        this.patronId = patronId;
+        this.allottedTo = allottedTo;
+        this.cancelledReservations = cancelledReservations;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getPatronId() {
+        return patronId;
+    }
+
+    // Returns the patron a returned book was allotted to from its waitlist, or -1 if it became available.
+    public int getAllottedTo() {
+        return allottedTo;
+    }
+
+    // Returns the patrons whose reservations were cancelled by deleting the book, in allotment order.
+    public int[] getCancelledReservations() {
+        return cancelledReservations.clone();
+    }
+
+    @Override
+    public String toString() {
+        return status + " book " + bookId + (patronId == -1 ? "" : " patron " + patronId)
+                + (allottedTo == -1 ? "" : " allotted to " + allottedTo)
+                + (cancelledReservations.length == 0 ? "" : " cancelled " + Arrays.toString(cancelledReservations));
+    }
+}
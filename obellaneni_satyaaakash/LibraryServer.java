@@ -0,0 +1,402 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The `LibraryServer` class serves the gatorLibrary command language over TCP on the loopback interface.
+ * One selector thread accepts connections and moves bytes without blocking. The complete lines of each read are
+ * handed together to a single writer thread, which owns the engine and executes every command in arrival order,
+ * so the engine needs no locks. Clients may pipeline: the output of each command is followed by a line holding
+ * a single ".", and responses come back in request order. Quit() ends the connection, not the server, and an
+ * open BulkLoad() block belongs to the connection that opened it.
+ * The latency of every request, from the read that completed its line to its queued response, and the number
+ * of connections are written to standard error every -DgatorLibrary.reportSeconds=N seconds (default 10, 0 for
+ * never) and appended to the output of Stats().
+ * Usage: java [-DgatorLibrary.engine=NAME] [-DgatorLibrary.wal=DIR] LibraryServer [port]
+ */
+public class LibraryServer {
+    private static final int DEFAULT_PORT = 5536;
+    private static final int INITIAL_INPUT_SIZE = 8 * 1024;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    // A connection is not read while more response bytes than this wait to be sent to it.
+    private static final long MAX_QUEUED_OUTPUT = 4 * 1024 * 1024;
+
+    private final LibraryEngine engine;
+    private final StringBuilderSink results; // The engine's sink, drained after every command
+    private final ServerSocketChannel listener;
+    private final Selector selector;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gatorLibrary-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Connections with new output or a pending close, handed from the writer to the selector thread.
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong acceptedConnections = new AtomicLong();
+
+    // Used by the writer thread only.
+    private final CommandParser parser = new CommandParser();
+    private final Command command = new Command();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private long reportedRequests;
+
+    /**
+     * Binds the server to the loopback interface; commands are not served before run is called.
+     *
+     * @param engine  The engine executing the commands; from now on it is only used by the writer thread.
+     * @param results The sink the engine writes its results to.
+     * @param port    The TCP port, or 0 for any free one.
+     * @throws IOException If the port cannot be bound.
+     */
+    public LibraryServer(LibraryEngine engine, StringBuilderSink results, int port) throws IOException {
+        this.engine = engine;
+        this.results = results;
+        this.selector = Selector.open();
+        this.listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String engineName = System.getProperty("gatorLibrary.engine", "tree");
+        String walDirectory = System.getProperty("gatorLibrary.wal");
+        StringBuilderSink results = new StringBuilderSink();
+        DurableLibrary durable = walDirectory == null ? null
+                : gatorLibrary.openDurable(engineName, results, Paths.get(walDirectory));
+        LibraryEngine engine = durable != null ? durable : gatorLibrary.createEngine(engineName, results);
+        LibraryServer server = new LibraryServer(engine, results, port);
+        if (LibraryMetrics.ENABLED) {
+            // The writer thread owns the engine, and answers JMX even while no command arrives.
+            LibraryMetrics.register(() -> {
+                try {
+                    server.writer.execute(engine::publishGauges);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; the last published gauges stand.
+                }
+            });
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.shutdown(durable)));
+        System.err.println("gatorLibrary listening on " + server.getAddress());
+        server.run();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) listener.getLocalAddress();
+    }
+
+    /**
+     * Runs the selector loop on the calling thread until shutdown closes the selector.
+     *
+     * @throws IOException If the selector fails.
+     */
+    public void run() throws IOException {
+        long reportSeconds = Long.getLong("gatorLibrary.reportSeconds", 10);
+        if (reportSeconds > 0) {
+            writer.scheduleAtFixedRate(this::report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+        }
+        try {
+            while (true) {
+                selector.select();
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    writeOutput(connection);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        readInput(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        writeOutput(connection);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Closed by shutdown.
+        }
+    }
+
+    /**
+     * Stops taking commands, waits for the writer to finish the ones it has, and closes the write-ahead log.
+     *
+     * @param durable The logging engine, or null if the engine keeps no log.
+     */
+    void shutdown(DurableLibrary durable) {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+            selector.close();
+            if (durable != null) {
+                durable.close();
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = listener.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        openConnections.incrementAndGet();
+        acceptedConnections.incrementAndGet();
+    }
+
+    // Reads what the client sent and hands the complete lines to the writer.
+    private void readInput(Connection connection) {
+        ByteBuffer input = connection.input;
+        int read;
+        try {
+            read = connection.channel.read(input);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        long receivedAt = System.nanoTime();
+        if (read < 0) {
+            // The client sent all its commands; answer them, then close.
+            connection.inputClosed = true;
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            submit(connection, () -> finish(connection));
+            return;
+        }
+        byte[] bytes = input.array();
+        int end = input.position();
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end > 0) {
+            byte[] lines = new byte[end];
+            System.arraycopy(bytes, 0, lines, 0, end);
+            input.flip().position(end);
+            input.compact();
+            submit(connection, () -> execute(connection, lines, receivedAt));
+        } else if (!input.hasRemaining()) {
+            if (input.capacity() >= MAX_LINE_LENGTH) {
+                close(connection);
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+            input.flip();
+            connection.input = larger.put(input);
+        }
+        if (connection.queuedOutput.get() > MAX_QUEUED_OUTPUT) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    // Sends the queued responses; closes the connection once they are sent if it is finished.
+    private void writeOutput(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        ByteBuffer response;
+        try {
+            while ((response = connection.output.peek()) != null) {
+                int written = connection.channel.write(response);
+                connection.queuedOutput.addAndGet(-written);
+                if (response.hasRemaining()) {
+                    connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.output.poll();
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (connection.finished) {
+            close(connection);
+            return;
+        }
+        int ops = connection.key.interestOps() & ~SelectionKey.OP_WRITE;
+        if (!connection.inputClosed && connection.queuedOutput.get() <= MAX_QUEUED_OUTPUT) {
+            ops |= SelectionKey.OP_READ;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void submit(Connection connection, Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            close(connection); // The server is shutting down.
+        }
+    }
+
+    private void close(Connection connection) {
+        if (connection.key.isValid()) {
+            connection.key.cancel();
+            openConnections.decrementAndGet();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // The connection is gone either way.
+        }
+    }
+
+    /**
+     * Executes the lines of one read on the writer thread and queues their responses. A malformed line is
+     * answered like an unknown command, and a command the engine fails on with a "Command failed" line after
+     * the failure is logged; lines after Quit() are ignored.
+     *
+     * @param connection The connection the lines came from.
+     * @param lines      Complete lines, each ending with '\n'.
+     * @param receivedAt The time the read that completed the lines returned, from System.nanoTime.
+     */
+    private void execute(Connection connection, byte[] lines, long receivedAt) {
+        if (connection.finished) {
+            return;
+        }
+        StringBuilder response = new StringBuilder();
+        boolean running = true;
+        int start = 0;
+        for (int newline = 0; newline < lines.length; newline++) {
+            if (lines[newline] != '\n') {
+                continue;
+            }
+            int end = newline > start && lines[newline - 1] == '\r' ? newline - 1 : newline;
+            if (end > start) {
+                try {
+                    parser.parse(lines, start, end, command);
+                    running = gatorLibrary.execute(engine, command, connection.bulk);
+                } catch (IllegalArgumentException e) {
+                    results.append("Invalid gatorLibrary operation\n");
+                } catch (RuntimeException e) {
+                    // The engine failed; the command is still answered, so a pipelining client is not left waiting.
+                    logFailure(e);
+                    results.take();
+                    results.append("Command failed: ").append(String.valueOf(e.getMessage())).append('\n');
+                }
+                if (running && command.opcode == Opcode.STATS) {
+                    writeServerStats(results);
+                }
+                response.append(results.take());
+                latencies.record(System.nanoTime() - receivedAt);
+                response.append(".\n");
+            }
+            start = newline + 1;
+            if (!running) {
+                break;
+            }
+        }
+        respond(connection, response.toString().getBytes(StandardCharsets.UTF_8), !running);
+    }
+
+    // Runs on the writer thread after the client closed its side: loads an open bulk block and ends the connection.
+    private void finish(Connection connection) {
+        if (!connection.finished) {
+            try {
+                gatorLibrary.finishBulkLoad(engine, connection.bulk);
+            } catch (RuntimeException e) {
+                logFailure(e);
+            }
+        }
+        respond(connection, results.take().getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    // Reports a command the engine failed on to standard error; the server keeps serving.
+    private static void logFailure(RuntimeException e) {
+        System.err.println("gatorLibrary command failed:");
+        e.printStackTrace();
+    }
+
+    /**
+     * Queues a response and wakes the selector to send it.
+     *
+     * @param connection The connection to answer.
+     * @param response   The encoded response, possibly empty.
+     * @param last       True if the connection is closed once the response is sent.
+     */
+    private void respond(Connection connection, byte[] response, boolean last) {
+        if (response.length > 0) {
+            connection.queuedOutput.addAndGet(response.length);
+            connection.output.add(ByteBuffer.wrap(response));
+        }
+        if (last) {
+            // Set after queuing, so the selector never closes the connection before sending the response.
+            connection.finished = true;
+        }
+        ready.add(connection);
+        selector.wakeup();
+    }
+
+    private void writeServerStats(OutputSink out) {
+        out.append("Connections : ").append(openConnections.get()).append(" open, ")
+                .append(Long.toString(acceptedConnections.get())).append(" accepted\n");
+        out.append("Requests : ").append(Long.toString(latencies.getCount()))
+                .append(", p50 ").append(Long.toString(latencies.percentile(0.5)))
+                .append(" ns, p99 ").append(Long.toString(latencies.percentile(0.99)))
+                .append(" ns, p999 ").append(Long.toString(latencies.percentile(0.999)))
+                .append(" ns, max ").append(Long.toString(latencies.getMax())).append(" ns\n");
+    }
+
+    // Runs on the writer thread; the percentiles cover every request since the server started.
+    private void report() {
+        long requests = latencies.getCount();
+        System.err.printf(Locale.ROOT, "connections open=%d accepted=%d requests=%d (+%d) p50=%.1fus p99=%.1fus"
+                        + " p999=%.1fus max=%.1fus%n", openConnections.get(), acceptedConnections.get(), requests,
+                requests - reportedRequests, latencies.percentile(0.5) / 1e3, latencies.percentile(0.99) / 1e3,
+                latencies.percentile(0.999) / 1e3, latencies.getMax() / 1e3);
+        reportedRequests = requests;
+    }
+
+    /**
+     * The state of one client connection. The selector thread owns the channel and the input buffer, the
+     * writer thread owns the bulk load block, and the output queue passes responses between them.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer input = ByteBuffer.allocate(INITIAL_INPUT_SIZE);
+        boolean inputClosed;
+        final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        final AtomicLong queuedOutput = new AtomicLong(); // Response bytes not sent yet
+        final BookBatch bulk = new BookBatch();
+        volatile boolean finished; // Set by the writer after Quit() or the end of the input
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The `LibraryService` class is the API for embedding the library in a JVM service. Every method queues a
+ * request and returns a `CompletableFuture` of its typed result instead of writing text: a `LibraryOutcome` for
+ * the commands that change a book, `BookSnapshot`s for the ones that print books, and counts as integers.
+ * Any number of threads may call it. The requests pass through a `RequestRing` to one service thread that owns
+ * a `RedBlackTree`, takes the requests in batches and runs them in the order they were queued, so the tree is
+ * never locked. The futures are completed on the service thread after each batch; stages that block, run long
+ * or queue further requests should be attached with the async variants of `CompletableFuture`.
+ */
+public class LibraryService implements AutoCloseable {
+    private static final int RING_CAPACITY = 1024;
+    private static final int BATCH_SIZE = 256;
+
+    private final RequestRing ring = new RequestRing(RING_CAPACITY);
+    private final RedBlackTree tree; // Used by the service thread only
+    private final Thread owner;
+
+    // Results of the current batch, completed once its slots are freed. Used by the service thread only.
+    private final CompletableFuture<?>[] batchFutures = new CompletableFuture<?>[BATCH_SIZE];
+    private final Object[] batchResults = new Object[BATCH_SIZE];
+    private final Throwable[] batchErrors = new Throwable[BATCH_SIZE];
+
+    // Creates a service over an empty library.
+    public LibraryService() {
+        this(new RedBlackTree(new NullSink()));
+    }
+
+    /**
+     * Creates a service over the given tree, such as one loaded from a snapshot, and starts its thread.
+     *
+     * @param tree The tree; from now on it must only be used through this service.
+     */
+    LibraryService(RedBlackTree tree) {
+        this.tree = tree;
+        this.owner = new Thread(this::run, "gatorLibrary-service");
+        this.owner.setDaemon(true);
+        this.owner.start();
+    }
+
+    // Inserts a book; completes with INSERTED, or DUPLICATE if the ID is taken.
+    public CompletableFuture<LibraryOutcome> insertBook(int bookId, String bookName, String authorName,
+                                                        boolean isAvailable) {
+        long sequence = ring.claim();
+        if (sequence < 0) {
+            return closed();
+        }
+        Command command = ring.slot(sequence).command;
+        command.opcode = Opcode.INSERT_BOOK;
+        command.bookId = bookId;
+        command.bookName = bookName;
+        command.authorName = authorName;
+        command.isAvailable = isAvailable;
+        return publish(sequence);
+    }
+
+    // Completes with the book, or null if it is not in the library.
+    public CompletableFuture<BookSnapshot> printBook(int bookId) {
+        return submit(Opcode.PRINT_BOOK, bookId, 0, -1, 0);
+    }
+
+    // Completes with the books with an ID in [bookId1, bookId2], in ID order.
+    public CompletableFuture<List<BookSnapshot>> printBooks(int bookId1, int bookId2) {
+        return submit(Opcode.PRINT_BOOKS, bookId1, bookId2, -1, 0);
+    }
+
+    // Completes with at most limit books of [bookId1, bookId2] after the first offset ones, in ID order.
+    public CompletableFuture<List<BookSnapshot>> printBooks(int bookId1, int bookId2, int offset, int limit) {
+        long sequence = ring.claim();
+        if (sequence < 0) {
+            return closed();
+        }
+        Command command = ring.slot(sequence).command;
+        command.opcode = Opcode.PRINT_BOOKS_PAGE;
+        command.bookId = bookId1;
+        command.bookId2 = bookId2;
+        command.offset = offset;
+        command.limit = limit;
+        return publish(sequence);
+    }
+
+    // Completes with the number of books with an ID in [bookId1, bookId2].
+    public CompletableFuture<Integer> countBooks(int bookId1, int bookId2) {
+        return submit(Opcode.COUNT_BOOKS, bookId1, bookId2, -1, 0);
+    }
+
+    // Completes with the books by the given author, in ID order.
+    public CompletableFuture<List<BookSnapshot>> printBooksByAuthor(String author) {
+        long sequence = ring.claim();
+        if (sequence < 0) {
+            return closed();
+        }
+        Command command = ring.slot(sequence).command;
+        command.opcode = Opcode.PRINT_BOOKS_BY_AUTHOR;
+        command.authorName = author;
+        return publish(sequence);
+    }
+
+    // Completes with the books whose title starts with the given prefix, in title order and then in ID order.
+    public CompletableFuture<List<BookSnapshot>> searchTitle(String prefix) {
+        long sequence = ring.claim();
+        if (sequence < 0) {
+            return closed();
+        }
+        Command command = ring.slot(sequence).command;
+        command.opcode = Opcode.SEARCH_TITLE;
+        command.bookName = prefix;
+        return publish(sequence);
+    }
+
+    // Lends an available book, or puts the patron on its waitlist; completes with BORROWED, RESERVED,
+    // ALREADY_RESERVED or NOT_FOUND.
+    public CompletableFuture<LibraryOutcome> borrowBook(int patronId, int bookId, int patronPriority) {
+        return submit(Opcode.BORROW_BOOK, bookId, 0, patronId, patronPriority);
+    }
+
+    // Takes a book back and allots it to the first patron on its waitlist; completes with RETURNED,
+    // NOT_BORROWED or NOT_FOUND.
+    public CompletableFuture<LibraryOutcome> returnBook(int patronId, int bookId) {
+        return submit(Opcode.RETURN_BOOK, bookId, 0, patronId, 0);
+    }
+
+    // Deletes a book and cancels its reservations; completes with DELETED or NOT_FOUND.
+    public CompletableFuture<LibraryOutcome> deleteBook(int bookId) {
+        return submit(Opcode.DELETE_BOOK, bookId, 0, -1, 0);
+    }
+
+    // Completes with the book closest to the given ID, or both closest books on a tie, in ID order.
+    public CompletableFuture<List<BookSnapshot>> findClosestBook(int targetId) {
+        return submit(Opcode.FIND_CLOSEST_BOOK, targetId, 0, -1, 0);
+    }
+
+    // Completes with the number of color flips made by the tree so far.
+    public CompletableFuture<Integer> colorFlipCount() {
+        return submit(Opcode.COLOR_FLIP_COUNT, 0, 0, -1, 0);
+    }
+
+    // Removes the patron from the waitlist of a book; completes with CANCELLED, NOT_RESERVED or NOT_FOUND.
+    public CompletableFuture<LibraryOutcome> cancelReservation(int patronId, int bookId) {
+        return submit(Opcode.CANCEL_RESERVATION, bookId, 0, patronId, 0);
+    }
+
+    // Changes the priority of a reservation; completes with PRIORITY_UPDATED, NOT_RESERVED or NOT_FOUND.
+    public CompletableFuture<LibraryOutcome> updatePriority(int patronId, int bookId, int newPriority) {
+        return submit(Opcode.UPDATE_PRIORITY, bookId, 0, patronId, newPriority);
+    }
+
+    /**
+     * Stops taking requests, waits until the ones already queued have run, and stops the service thread.
+     * Requests made afterwards fail with an IllegalStateException. If the calling thread is interrupted while
+     * waiting, it returns early with its interrupt status set; the queued requests still run.
+     */
+    @Override
+    public void close() {
+        ring.close();
+        try {
+            owner.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Queues a request whose arguments are integers.
+    private <T> CompletableFuture<T> submit(Opcode opcode, int bookId, int bookId2, int patronId, int priority) {
+        long sequence = ring.claim();
+        if (sequence < 0) {
+            return closed();
+        }
+        Command command = ring.slot(sequence).command;
+        command.opcode = opcode;
+        command.bookId = bookId;
+        command.bookId2 = bookId2;
+        command.patronId = patronId;
+        command.priority = priority;
+        return publish(sequence);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> publish(long sequence) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        ring.slot(sequence).result = result;
+        ring.publish(sequence);
+        return (CompletableFuture<T>) result;
+    }
+
+    private static <T> CompletableFuture<T> closed() {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(new IllegalStateException("LibraryService is closed"));
+        return result;
+    }
+
+    // Service thread: runs the queued requests batch by batch until the ring is closed and drained.
+    @SuppressWarnings("unchecked")
+    private void run() {
+        while (true) {
+            int count = ring.take(BATCH_SIZE);
+            if (count == 0) {
+                return;
+            }
+            long first = ring.getConsumed();
+            for (int i = 0; i < count; i++) {
+                RequestRing.Slot slot = ring.slot(first + i);
+                batchFutures[i] = slot.result;
+                try {
+                    batchResults[i] = execute(slot.command);
+                } catch (RuntimeException e) {
+                    batchErrors[i] = e;
+                }
+                slot.result = null;
+                slot.command.bookName = null;
+                slot.command.authorName = null;
+            }
+            // Free the slots before completing, so producers are not held up by the stages the futures run.
+            ring.release(count);
+            for (int i = 0; i < count; i++) {
+                CompletableFuture<Object> future = (CompletableFuture<Object>) batchFutures[i];
+                if (batchErrors[i] != null) {
+                    future.completeExceptionally(batchErrors[i]);
+                } else {
+                    future.complete(batchResults[i]);
+                }
+                batchFutures[i] = null;
+                batchResults[i] = null;
+                batchErrors[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Runs one request on the tree and returns its typed result. The outcome of a change is read from the
+     * book before and after the tree's own method makes it, so the tree's state, including its color flip
+     * count, evolves exactly as in the batch mode.
+     *
+     * @param command The request.
+     * @return The result the request's future completes with.
+     */
+    private Object execute(Command command) {
+        int bookId = command.bookId;
+        int patronId = command.patronId;
+        RedBlackNode book;
+        switch (command.opcode) {
+            case INSERT_BOOK:
+                book = tree.printBook(bookId);
+                tree.insertBook(bookId, command.bookName, command.authorName, command.isAvailable);
+                return new LibraryOutcome(book == null ? LibraryOutcome.Status.INSERTED
+                        : LibraryOutcome.Status.DUPLICATE, bookId, -1);
+            case PRINT_BOOK:
+                book = tree.printBook(bookId);
+                return book == null ? null : BookSnapshot.of(book);
+            case PRINT_BOOKS:
+                return snapshots(tree.rangeCursor(bookId, command.bookId2));
+            case PRINT_BOOKS_PAGE:
+                return page(bookId, command.bookId2, command.offset, command.limit);
+            case COUNT_BOOKS:
+                return tree.count(bookId, command.bookId2);
+            case PRINT_BOOKS_BY_AUTHOR:
+                return snapshots(tree.booksByAuthor(command.authorName));
+            case SEARCH_TITLE:
+                return snapshots(tree.booksWithTitlePrefix(command.bookName));
+            case BORROW_BOOK:
+                return borrow(patronId, bookId, command.priority);
+            case RETURN_BOOK:
+                book = tree.printBook(bookId);
+                if (book == null) {
+                    return new LibraryOutcome(LibraryOutcome.Status.NOT_FOUND, bookId, patronId);
+                } else if (book.isAvailable || book.borrowedBy != patronId) {
+                    return new LibraryOutcome(LibraryOutcome.Status.NOT_BORROWED, bookId, patronId);
+                }
+                tree.returnBook(patronId, bookId);
+                return new LibraryOutcome(LibraryOutcome.Status.RETURNED, bookId, patronId, book.borrowedBy,
+                        new int[0]);
+            case DELETE_BOOK:
+                book = tree.printBook(bookId);
+                if (book == null) {
+                    return new LibraryOutcome(LibraryOutcome.Status.NOT_FOUND, bookId, -1);
+                }
+                int[] cancelled = book.minHeap.copyPatronsInOrder();
+                tree.deleteBook(bookId);
+                return new LibraryOutcome(LibraryOutcome.Status.DELETED, bookId, -1, -1, cancelled);
+            case FIND_CLOSEST_BOOK:
+                return closest(bookId);
+            case COLOR_FLIP_COUNT:
+                return tree.flipCount;
+            case CANCEL_RESERVATION:
+            case UPDATE_PRIORITY:
+                return changeReservation(command);
+            default:
+                throw new IllegalArgumentException("Unsupported request: " + command.opcode);
+        }
+    }
+
+    private LibraryOutcome borrow(int patronId, int bookId, int patronPriority) {
+        RedBlackNode book = tree.printBook(bookId);
+        if (book == null) {
+            return new LibraryOutcome(LibraryOutcome.Status.NOT_FOUND, bookId, patronId);
+        }
+        LibraryOutcome.Status status = book.isAvailable ? LibraryOutcome.Status.BORROWED
+                : tree.alreadyReservedByPatron(patronId, book) ? LibraryOutcome.Status.ALREADY_RESERVED
+                : LibraryOutcome.Status.RESERVED;
+        tree.borrowBook(patronId, bookId, patronPriority);
+        return new LibraryOutcome(status, bookId, patronId);
+    }
+
+    // Cancels a reservation or changes its priority.
+    private LibraryOutcome changeReservation(Command command) {
+        RedBlackNode book = tree.printBook(command.bookId);
+        if (book == null) {
+            return new LibraryOutcome(LibraryOutcome.Status.NOT_FOUND, command.bookId, command.patronId);
+        }
+        if (!tree.alreadyReservedByPatron(command.patronId, book)) {
+            return new LibraryOutcome(LibraryOutcome.Status.NOT_RESERVED, command.bookId, command.patronId);
+        }
+        LibraryOutcome.Status status;
+        if (command.opcode == Opcode.CANCEL_RESERVATION) {
+            tree.cancelReservation(command.patronId, command.bookId);
+            status = LibraryOutcome.Status.CANCELLED;
+        } else {
+            tree.updatePriority(command.patronId, command.bookId, command.priority);
+            status = LibraryOutcome.Status.PRIORITY_UPDATED;
+        }
+        return new LibraryOutcome(status, command.bookId, command.patronId);
+    }
+
+    private List<BookSnapshot> page(int bookId1, int bookId2, int offset, int limit) {
+        List<BookSnapshot> books = new ArrayList<>();
+        if (bookId1 > bookId2 || limit <= 0) {
+            return books;
+        }
+        RedBlackNode book = tree.select(tree.rank(bookId1) + Math.max(offset, 0));
+        for (; book != null && book.bookId <= bookId2 && books.size() < limit; book = tree.successor(book)) {
+            books.add(BookSnapshot.of(book));
+        }
+        return books;
+    }
+
+    // Returns the floor and the ceiling of the ID, whichever is closer, or both on a tie.
+    private List<BookSnapshot> closest(int targetId) {
+        List<BookSnapshot> books = new ArrayList<>(2);
+        RedBlackNode floor = tree.floorBook(targetId);
+        RedBlackNode ceiling = tree.ceilingBook(targetId);
+        long floorDiff = floor == null ? Long.MAX_VALUE : (long) targetId - floor.bookId;
+        long ceilingDiff = ceiling == null ? Long.MAX_VALUE : (long) ceiling.bookId - targetId;
+        if (floor != null && floorDiff <= ceilingDiff)
+            books.add(BookSnapshot.of(floor));
+        if (ceiling != null && ceiling != floor && ceilingDiff <= floorDiff)
+            books.add(BookSnapshot.of(ceiling));
+        return books;
+    }
+
+    private static List<BookSnapshot> snapshots(Collection<RedBlackNode> books) {
+        List<BookSnapshot> snapshots = new ArrayList<>();
+        for (RedBlackNode book : books) {
+            snapshots.add(BookSnapshot.of(book));
+        }
+        return snapshots;
+    }
+
+    private static List<BookSnapshot> snapshots(BookRangeCursor books) {
+        List<BookSnapshot> snapshots = new ArrayList<>();
+        while (books.hasNext()) {
+            snapshots.add(BookSnapshot.of(books.next()));
+        }
+        return snapshots;
+    }
+}
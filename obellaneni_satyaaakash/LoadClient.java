@@ -0,0 +1,128 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The `LoadClient` class drives a `LibraryServer` on this machine with the commands of a file, such as one written
+ * by `WorkloadGenerator`, and reports the throughput and the latency percentiles the clients saw. Every connection
+ * runs on its own thread, keeps up to depth requests in flight, and starts at a different line of the file,
+ * wrapping around at its end. Quit() lines are skipped, since they would end the connection.
+ * Usage: java LoadClient commandFile [port] [connections] [depth] [seconds]
+ */
+public class LoadClient {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 5) {
+            System.err.println("Usage: java LoadClient commandFile [port] [connections] [depth] [seconds]");
+            System.exit(2);
+        }
+        byte[][] commands = readCommands(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5536;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        LatencyHistogram[] latencies = new LatencyHistogram[connections];
+        Thread[] threads = new Thread[connections];
+        Throwable[] errors = new Throwable[connections];
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            int client = i;
+            latencies[i] = new LatencyHistogram();
+            threads[i] = new Thread(() -> {
+                try {
+                    drive(port, commands, commands.length * client / connections, depth, deadline, latencies[client]);
+                } catch (Throwable e) {
+                    errors[client] = e;
+                }
+            });
+            threads[i].start();
+        }
+        LatencyHistogram all = new LatencyHistogram();
+        for (int i = 0; i < connections; i++) {
+            threads[i].join();
+            if (errors[i] != null) {
+                throw new IllegalStateException("Connection " + i + " failed", errors[i]);
+            }
+            all.add(latencies[i]);
+        }
+        double wall = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "connections=%d depth=%d requests=%d requests/s=%.0f p50=%.1fus p99=%.1fus"
+                        + " p999=%.1fus max=%.1fus%n", connections, depth, all.getCount(), all.getCount() / wall,
+                all.percentile(0.5) / 1e3, all.percentile(0.99) / 1e3, all.percentile(0.999) / 1e3,
+                all.getMax() / 1e3);
+    }
+
+    // Reads the non-blank lines of the command file other than Quit(), each encoded with its newline.
+    private static byte[][] readCommands(String fileName) throws IOException {
+        List<byte[]> commands = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            String command = line.trim();
+            if (!command.isEmpty() && !command.startsWith("Quit")) {
+                commands.add((command + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (commands.isEmpty()) {
+            throw new IllegalArgumentException("No commands in " + fileName);
+        }
+        return commands.toArray(new byte[0][]);
+    }
+
+    /**
+     * Sends commands over one connection until the deadline, keeping up to depth of them unanswered, then waits
+     * for the remaining responses.
+     *
+     * @param port      The server port on the loopback interface.
+     * @param commands  The encoded commands.
+     * @param next      Index of the first command to send.
+     * @param depth     The largest number of requests in flight.
+     * @param deadline  The time to stop sending, from System.nanoTime.
+     * @param latencies Receives the time from sending each request to reading the end of its response.
+     * @throws IOException If the connection fails or the server closes it early.
+     */
+    private static void drive(int port, byte[][] commands, int next, int depth, long deadline,
+                              LatencyHistogram latencies) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            long[] sentAt = new long[depth]; // Ring of the send times of the requests in flight
+            int oldest = 0;
+            int inFlight = 0;
+            while (true) {
+                boolean sending = System.nanoTime() < deadline;
+                while (sending && inFlight < depth) {
+                    out.write(commands[next]);
+                    next = next + 1 == commands.length ? 0 : next + 1;
+                    sentAt[(oldest + inFlight) % depth] = System.nanoTime();
+                    inFlight++;
+                }
+                out.flush();
+                if (inFlight == 0) {
+                    return;
+                }
+                String line;
+                while ((line = in.readLine()) != null && !line.equals(".")) {
+                    // Skip the command's output up to the end of its response.
+                }
+                if (line == null) {
+                    throw new IOException("Server closed the connection");
+                }
+                latencies.record(System.nanoTime() - sentAt[oldest]);
+                oldest = (oldest + 1) % depth;
+                inFlight--;
+            }
+        }
+    }
+}
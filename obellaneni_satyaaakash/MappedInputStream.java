@@ -0,0 +1,65 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The `MappedInputStream` class reads a file through a sliding window of read-only memory mappings, so large
+ * input files are copied straight from the page cache into the parser buffer without read system calls.
+ */
+public class MappedInputStream extends InputStream {
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private long windowStart;        // File offset of the current window
+    private MappedByteBuffer window; // Current mapping, or null before the first read
+
+    public MappedInputStream(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        int count = Math.min(len, window.remaining());
+        window.get(b, off, count);
+        return count;
+    }
+
+    // Maps the next window once the current one is exhausted; returns false at the end of the file.
+    private boolean ensureWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        long next = window == null ? 0 : windowStart + window.capacity();
+        if (next >= fileSize) {
+            return false;
+        }
+        windowStart = next;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(WINDOW_SIZE, fileSize - next));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
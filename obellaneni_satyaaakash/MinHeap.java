@@ -1,17 +1,116 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
 
+/**
+ * The `MinHeap` class keeps the reservations of one book ordered by priority and reservation order.
+ * Each reservation is packed into a single `long` key, with the priority number in the high 32 bits and the
+ * library-wide reservation sequence number in the low 32 bits, so keys are unique and compare in exactly the
+ * order reservations are allotted. Keys live in a `long[]` heap with the patron IDs in a parallel `int[]`.
+ * The arrays are only allocated by the first reservation, grow geometrically as reservations arrive and
+ * shrink again as they are drained, so books that are never reserved carry no arrays at all.
+ * An index from patron ID to heap slot, kept up to date on every insert, swap and poll, answers whether a
+ * patron already holds a reservation in constant time. The index is an open-addressing table of ints with
+ * at least twice the capacity of the heap arrays, rebuilt whenever they are resized, so adding a reservation
+ * allocates nothing. Printing uses a cached sorted copy of the reservations and never modifies the heap.
+ */
 public class MinHeap {
-    private final int capacity;
+    private static final long[] EMPTY_KEYS = new long[0];
+    private static final int[] EMPTY_PATRONS = new int[0];
+    private static final int MIN_CAPACITY = 4;
+    private static final long SEQUENCE_MASK = 0xFFFFFFFFL;
+
     private int size;
-    public ReservationNode[] heap;
+    private long[] keys;    // Packed (priority, sequence) keys in heap order
+    private int[] patrons;  // Patron ID of the reservation in the same slot of keys
+    private int[] indexPatrons;   // Patron ID of each index entry, probed linearly; null while the heap is empty
+    private int[] indexSlots;     // Heap slot + 1 of each index entry, 0 for a free entry
+    private int[] sortedPatrons;  // Patron IDs in poll order, null until printed or after a change
+    private long[] sortedKeys;    // Keys matching sortedPatrons
+
+    // Creates an empty heap without backing arrays.
+    public MinHeap() {
+        this.keys = EMPTY_KEYS;
+        this.patrons = EMPTY_PATRONS;
+        size = 0;
+    }
 
+    // Creates an empty heap with room for the given number of reservations.
     public MinHeap(int capacity) {
-        this.capacity = capacity;
-        this.heap = new ReservationNode[capacity];
+        this.keys = capacity == 0 ? EMPTY_KEYS : new long[capacity];
+        this.patrons = capacity == 0 ? EMPTY_PATRONS : new int[capacity];
         size = 0;
     }
 
+    /**
+     * Packs a reservation into its heap key.
+     *
+     * @param priority The priority number; lower numbers are served first.
+     * @param sequence The reservation sequence number; must be below 2^32.
+     * @return The key, ordering first by priority and then by sequence.
+     */
+    public static long key(int priority, long sequence) {
+        return ((long) priority << 32) | (sequence & SEQUENCE_MASK);
+    }
+
+    // Extracts the priority number from a key.
+    public static int priorityOf(long key) {
+        return (int) (key >> 32);
+    }
+
+    // Extracts the reservation sequence number from a key.
+    public static long sequenceOf(long key) {
+        return key & SEQUENCE_MASK;
+    }
+
+    /**
+     * Returns the sequence number for a new reservation of a library. Once the 2^32 sequence numbers are used
+     * up, the live reservations of the library are renumbered from 0 in their current sequence order, which
+     * keeps the order of every waitlist and frees the numbers above them.
+     *
+     * @param next  The library's next unused sequence number.
+     * @param heaps Supplies every reservation heap of the library; only called to renumber.
+     * @return The sequence number to use; the library's next unused number becomes this plus one.
+     */
+    static long nextSequence(long next, Supplier<List<MinHeap>> heaps) {
+        return next <= SEQUENCE_MASK ? next : renumber(heaps.get());
+    }
+
+    // Renumbers the reservations of the heaps 0, 1, ... in sequence order and returns the next free number.
+    private static long renumber(List<MinHeap> heaps) {
+        long total = 0;
+        for (MinHeap heap : heaps) {
+            total += heap.size;
+        }
+        if (total > SEQUENCE_MASK || total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many reservations to renumber: " + total);
+        }
+        // Each entry packs the old sequence number above the reservation's position in heapOf and slotOf.
+        long[] order = new long[(int) total];
+        int[] heapOf = new int[order.length];
+        int[] slotOf = new int[order.length];
+        int count = 0;
+        for (int h = 0; h < heaps.size(); h++) {
+            MinHeap heap = heaps.get(h);
+            for (int slot = 0; slot < heap.size; slot++) {
+                order[count] = sequenceOf(heap.keys[slot]) << 31 | count;
+                heapOf[count] = h;
+                slotOf[count++] = slot;
+            }
+        }
+        Arrays.sort(order);
+        for (int sequence = 0; sequence < count; sequence++) {
+            int i = (int) (order[sequence] & Integer.MAX_VALUE);
+            MinHeap heap = heaps.get(heapOf[i]);
+            heap.keys[slotOf[i]] = key(priorityOf(heap.keys[slotOf[i]]), sequence);
+            heap.invalidateView();
+        }
+        return count;
+    }
+
     public boolean isEmpty() {
         return size == 0;
     }
@@ -20,28 +119,84 @@ public class MinHeap {
         return size;
     }
 
-    public int getLeftChildIdx(int parentIdx) {
-        return 2 * parentIdx + 1;
+    // Returns true if the patron has a reservation in this heap.
+    public boolean contains(int patronId) {
+        return entryOf(patronId) >= 0;
     }
 
-    public int getRightChildIdx(int parentIdx) {
-        return 2 * parentIdx + 2;
+    // Returns the heap slot holding the patron's reservation, or -1 if the patron has none.
+    public int indexOf(int patronId) {
+        int entry = entryOf(patronId);
+        return entry < 0 ? -1 : indexSlots[entry] - 1;
     }
 
-    public int getParentIdx(int childIdx) {
-        return (childIdx - 1) / 2;
+    // Returns the index entry of the patron, or -1 if the patron has no reservation.
+    private int entryOf(int patronId) {
+        if (indexSlots == null) {
+            return -1;
+        }
+        int mask = indexSlots.length - 1;
+        for (int entry = hash(patronId) & mask; indexSlots[entry] != 0; entry = (entry + 1) & mask) {
+            if (indexPatrons[entry] == patronId) {
+                return entry;
+            }
+        }
+        return -1;
     }
 
-    public ReservationNode leftChild(int parentIdx) {
-        return heap[getLeftChildIdx(parentIdx)];
+    private static int hash(int patronId) {
+        int h = patronId * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
-    public ReservationNode rightChild(int parentIdx) {
-        return heap[getRightChildIdx(parentIdx)];
+    // Records the heap slot of the patron's reservation, adding the patron to the index if needed.
+    private void indexPut(int patronId, int slot) {
+        int mask = indexSlots.length - 1;
+        int entry = hash(patronId) & mask;
+        while (indexSlots[entry] != 0 && indexPatrons[entry] != patronId) {
+            entry = (entry + 1) & mask;
+        }
+        indexPatrons[entry] = patronId;
+        indexSlots[entry] = slot + 1;
     }
 
-    public ReservationNode parent(int childIdx) {
-        return heap[getParentIdx(childIdx)];
+    // Removes the patron from the index, shifting later entries of the probe run back into the gap.
+    private void indexRemove(int patronId) {
+        int gap = entryOf(patronId);
+        int mask = indexSlots.length - 1;
+        indexSlots[gap] = 0;
+        for (int entry = (gap + 1) & mask; indexSlots[entry] != 0; entry = (entry + 1) & mask) {
+            int home = hash(indexPatrons[entry]) & mask;
+            // The entry may move back only if the gap lies between its home and its current place.
+            if (((entry - home) & mask) >= ((entry - gap) & mask)) {
+                indexPatrons[gap] = indexPatrons[entry];
+                indexSlots[gap] = indexSlots[entry];
+                indexSlots[entry] = 0;
+                gap = entry;
+            }
+        }
+    }
+
+    // Rebuilds the index for the current heap arrays, with a power of two entries, at least two per heap slot.
+    private void rebuildIndex() {
+        int entries = Integer.highestOneBit(2 * keys.length - 1) << 1;
+        indexPatrons = new int[entries];
+        indexSlots = new int[entries];
+        for (int i = 0; i < size; i++) {
+            indexPut(patrons[i], i);
+        }
+    }
+
+    public int getLeftChildIdx(int parentIdx) {
+        return 2 * parentIdx + 1;
+    }
+
+    public int getRightChildIdx(int parentIdx) {
+        return 2 * parentIdx + 2;
+    }
+
+    public int getParentIdx(int childIdx) {
+        return (childIdx - 1) / 2;
     }
 
     public ReservationNode peek() {
@@ -49,7 +204,7 @@ public class MinHeap {
             System.out.println("MinHeap empty, invalid peek()");
             return null;
         }
-        return heap[0];
+        return new ReservationNode(patrons[0], keys[0]);
     }
 
     public ReservationNode poll() {
@@ -57,41 +212,166 @@ public class MinHeap {
             System.out.println("MinHeap empty, invalid poll()");
             return null;
         }
-        ReservationNode minNode = heap[0];
-        heap[0] = heap[size - 1];
-        size--;
-        heapifyDown();
+        ReservationNode minNode = new ReservationNode(patrons[0], keys[0]);
+        pollPatronId();
         return minNode;
     }
 
+    /**
+     * Removes the first reservation in allotment order without creating a node for it.
+     *
+     * @return The patron ID of the removed reservation, or -1 if the heap is empty.
+     */
+    public int pollPatronId() {
+        if (size == 0) {
+            return -1;
+        }
+        int patronId = patrons[0];
+        removeAt(0);
+        return patronId;
+    }
+
     public void insertNode(ReservationNode reservation) {
-        if (size == capacity) {
-            System.out.println("The Reservation Heap is full and cannot accept any more reservations");
+        insertNode(reservation.getPatronId(), reservation.getKey());
+    }
+
+    /**
+     * Adds a reservation.
+     *
+     * @param patronId The patron making the reservation.
+     * @param key      The packed (priority, sequence) key of the reservation.
+     */
+    public void insertNode(int patronId, long key) {
+        if (size == keys.length) {
+            grow();
+        } else if (indexSlots == null) {
+            rebuildIndex();
+        }
+        invalidateView();
+        keys[size] = key;
+        patrons[size] = patronId;
+        indexPut(patronId, size);
+        size++;
+        heapifyUp();
+    }
+
+    /**
+     * Removes the patron's reservation wherever it sits in the heap.
+     *
+     * @param patronId The patron whose reservation is cancelled.
+     * @return The removed reservation, or null if the patron has none.
+     */
+    public ReservationNode remove(int patronId) {
+        int slot = indexOf(patronId);
+        if (slot < 0) {
+            return null;
+        }
+        ReservationNode removed = new ReservationNode(patronId, keys[slot]);
+        removeAt(slot);
+        return removed;
+    }
+
+    /**
+     * Changes the priority of the patron's reservation and restores the heap order around it.
+     * The original sequence number is kept, so it still breaks ties against other reservations.
+     *
+     * @param patronId    The patron whose reservation changes.
+     * @param newPriority The new priority number.
+     * @return False if the patron has no reservation in this heap.
+     */
+    public boolean updatePriority(int patronId, int newPriority) {
+        int slot = indexOf(patronId);
+        if (slot < 0) {
+            return false;
+        }
+        long oldKey = keys[slot];
+        long newKey = key(newPriority, sequenceOf(oldKey));
+        keys[slot] = newKey;
+        invalidateView();
+        if (newKey < oldKey) {
+            siftUp(slot);
         } else {
-            heap[size] = reservation;
-            size++;
-            heapifyUp();
+            siftDown(slot);
+        }
+        return true;
+    }
+
+    // Removes the reservation in the given slot, filling the hole with the last one.
+    private void removeAt(int slot) {
+        invalidateView();
+        indexRemove(patrons[slot]);
+        size--;
+        if (slot != size) {
+            // Move the last reservation into the hole and restore the order in whichever direction it is broken.
+            keys[slot] = keys[size];
+            patrons[slot] = patrons[size];
+            indexPut(patrons[slot], slot);
+            if (slot > 0 && keys[slot] < keys[getParentIdx(slot)]) {
+                siftUp(slot);
+            } else {
+                siftDown(slot);
+            }
+        }
+        shrink();
+    }
+
+    // Doubles the backing arrays, allocating them on the first reservation.
+    private void grow() {
+        int capacity = Math.max(MIN_CAPACITY, keys.length * 2);
+        long[] largerKeys = new long[capacity];
+        int[] largerPatrons = new int[capacity];
+        System.arraycopy(keys, 0, largerKeys, 0, size);
+        System.arraycopy(patrons, 0, largerPatrons, 0, size);
+        keys = largerKeys;
+        patrons = largerPatrons;
+        rebuildIndex();
+    }
+
+    // Releases the backing arrays once the heap is drained, and halves them when at most a quarter full.
+    private void shrink() {
+        if (size == 0) {
+            keys = EMPTY_KEYS;
+            patrons = EMPTY_PATRONS;
+            indexPatrons = null;
+            indexSlots = null;
+        } else if (keys.length > MIN_CAPACITY && size <= keys.length / 4) {
+            int capacity = keys.length / 2;
+            long[] smallerKeys = new long[capacity];
+            int[] smallerPatrons = new int[capacity];
+            System.arraycopy(keys, 0, smallerKeys, 0, size);
+            System.arraycopy(patrons, 0, smallerPatrons, 0, size);
+            keys = smallerKeys;
+            patrons = smallerPatrons;
+            rebuildIndex();
         }
     }
 
     public void heapifyUp() {
-        int idx = size - 1;
-        while (getParentIdx(idx) >= 0 && heap[idx].compareTo(parent(idx)) < 0) {
+        siftUp(size - 1);
+    }
+
+    public void heapifyDown() {
+        siftDown(0);
+    }
+
+    // Moves the reservation at idx up until its parent is smaller.
+    private void siftUp(int idx) {
+        while (idx > 0 && keys[idx] < keys[getParentIdx(idx)]) {
             swap(getParentIdx(idx), idx);
             idx = getParentIdx(idx);
         }
     }
 
-    public void heapifyDown() {
-        int idx = 0;
+    // Moves the reservation at idx down until it is smaller than both children.
+    private void siftDown(int idx) {
         while (getLeftChildIdx(idx) < size) {
             int smallestChild = getLeftChildIdx(idx);
 
-            if (getRightChildIdx(idx) < size && rightChild(idx).compareTo(leftChild(idx)) < 0) {
+            if (getRightChildIdx(idx) < size && keys[getRightChildIdx(idx)] < keys[smallestChild]) {
                 smallestChild = getRightChildIdx(idx);
             }
 
-            if (heap[idx].compareTo(heap[smallestChild]) < 0) {
+            if (keys[idx] < keys[smallestChild]) {
                 break;
             } else {
                 swap(idx, smallestChild);
@@ -101,9 +381,15 @@ public class MinHeap {
     }
 
     public void swap(int x, int y) {
-        ReservationNode temp = heap[x];
-        heap[x] = heap[y];
-        heap[y] = temp;
+        long tempKey = keys[x];
+        keys[x] = keys[y];
+        keys[y] = tempKey;
+        int tempPatron = patrons[x];
+        patrons[x] = patrons[y];
+        patrons[y] = tempPatron;
+        invalidateView();
+        indexPut(patrons[x], x);
+        indexPut(patrons[y], y);
     }
 
     public void printHeap() {
@@ -113,28 +399,185 @@ public class MinHeap {
         }
         System.out.print("{ ");
         for (int i = 0; i < size; i++) {
-            System.out.print(heap[i] + " ");
+            System.out.print(new ReservationNode(patrons[i], keys[i]) + " ");
         }
         System.out.println(" }");
     }
 
+    /**
+     * Returns the reservations in the order they would be polled, without modifying the heap.
+     * The sorted view is cached until the heap next changes, so repeated prints of an unchanged
+     * waitlist do not sort again.
+     *
+     * @return An iterator over the reservations, highest priority first.
+     */
+    public Iterator<ReservationNode> orderedIterator() {
+        buildOrderedView();
+        int[] viewPatrons = sortedPatrons;
+        long[] viewKeys = sortedKeys;
+        return new Iterator<ReservationNode>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < viewPatrons.length;
+            }
+
+            @Override
+            public ReservationNode next() {
+                if (next == viewPatrons.length) {
+                    throw new NoSuchElementException();
+                }
+                ReservationNode reservation = new ReservationNode(viewPatrons[next], viewKeys[next]);
+                next++;
+                return reservation;
+            }
+        };
+    }
+
+    // Drops the cached sorted copy after a change to the heap.
+    private void invalidateView() {
+        sortedPatrons = null;
+        sortedKeys = null;
+    }
+
+    // Builds the cached sorted copy of the reservations if the heap changed since it was last built.
+    private void buildOrderedView() {
+        if (sortedPatrons != null) {
+            return;
+        }
+        long[] viewKeys = new long[size];
+        int[] viewPatrons = new int[size];
+        System.arraycopy(keys, 0, viewKeys, 0, size);
+        System.arraycopy(patrons, 0, viewPatrons, 0, size);
+        sortInPollOrder(viewKeys, viewPatrons);
+        sortedKeys = viewKeys;
+        sortedPatrons = viewPatrons;
+    }
+
+    // Sorts a heap-ordered copy of the arrays into poll order. The copy is already a min-heap, so an in-place
+    // heapsort leaves it in descending key order; it is then reversed.
+    private static void sortInPollOrder(long[] viewKeys, int[] viewPatrons) {
+        int size = viewKeys.length;
+        for (int end = size - 1; end > 0; end--) {
+            swap(viewKeys, viewPatrons, 0, end);
+            int idx = 0;
+            while (2 * idx + 1 < end) {
+                int child = 2 * idx + 1;
+                if (child + 1 < end && viewKeys[child + 1] < viewKeys[child]) {
+                    child++;
+                }
+                if (viewKeys[idx] < viewKeys[child]) {
+                    break;
+                }
+                swap(viewKeys, viewPatrons, idx, child);
+                idx = child;
+            }
+        }
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            swap(viewKeys, viewPatrons, i, j);
+        }
+    }
+
+    private static void swap(long[] viewKeys, int[] viewPatrons, int x, int y) {
+        long tempKey = viewKeys[x];
+        viewKeys[x] = viewKeys[y];
+        viewKeys[y] = tempKey;
+        int tempPatron = viewPatrons[x];
+        viewPatrons[x] = viewPatrons[y];
+        viewPatrons[y] = tempPatron;
+    }
+
+    /**
+     * Returns a copy of the patron IDs in reservation order without building or publishing the cached view,
+     * so it can be called by several readers at once while no writer modifies the heap.
+     *
+     * @return The patron IDs, first to be allotted first.
+     */
+    public int[] copyPatronsInOrder() {
+        int[] view = sortedPatrons;
+        if (view != null) {
+            return view.clone();
+        }
+        long[] viewKeys = new long[size];
+        int[] viewPatrons = new int[size];
+        System.arraycopy(keys, 0, viewKeys, 0, viewKeys.length);
+        System.arraycopy(patrons, 0, viewPatrons, 0, viewPatrons.length);
+        sortInPollOrder(viewKeys, viewPatrons);
+        return viewPatrons;
+    }
+
+    /**
+     * Checks the heap order and the patron index against the heap arrays.
+     *
+     * @throws IllegalStateException If either is inconsistent.
+     */
+    void checkInvariants() {
+        int indexed = 0;
+        for (int entry = 0; indexSlots != null && entry < indexSlots.length; entry++) {
+            if (indexSlots[entry] != 0) {
+                indexed++;
+            }
+        }
+        if (indexed != size) {
+            throw new IllegalStateException("Patron index holds " + indexed + " entries for " + size + " reservations");
+        }
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && keys[i] < keys[getParentIdx(i)]) {
+                throw new IllegalStateException("Heap order broken at slot " + i);
+            }
+            if (indexOf(patrons[i]) != i) {
+                throw new IllegalStateException("Patron " + patrons[i] + " indexed at the wrong slot");
+            }
+        }
+    }
+
+    /**
+     * Writes the reservations as a count followed by (patron ID, priority, sequence number) triples.
+     *
+     * @param out The snapshot being written.
+     * @throws IOException If an I/O error occurs.
+     */
+    void writeSnapshot(SnapshotWriter out) throws IOException {
+        out.putVarInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putSignedVarInt(patrons[i]);
+            out.putSignedVarInt(priorityOf(keys[i]));
+            out.putVarLong(sequenceOf(keys[i]));
+        }
+    }
+
+    /**
+     * Adds the reservations written by `writeSnapshot`.
+     *
+     * @param in The snapshot being read.
+     * @throws IOException If an I/O error occurs or the data is malformed.
+     */
+    void readSnapshot(SnapshotReader in) throws IOException {
+        int count = in.getVarInt();
+        for (int i = 0; i < count; i++) {
+            int patronId = in.getSignedVarInt();
+            int priority = in.getSignedVarInt();
+            insertNode(patronId, key(priority, in.getVarLong()));
+        }
+    }
+
+    // Writes the patron IDs in reservation order, separated by commas, to the given sink.
+    public void writePatrons(OutputSink out) {
+        buildOrderedView();
+        int[] view = sortedPatrons;
+        for (int i = 0; i < view.length; i++) {
+            if (i > 0)
+                out.append(',');
+            out.append(view[i]);
+        }
+    }
+
     @Override
     public String toString() {
-        String res = "";
-        List<ReservationNode> tempList = new ArrayList<>();
-        while (this.size > 1) {
-            ReservationNode heapNode = poll();
-            tempList.add(heapNode);
-            res += heapNode.getPatronId() + ",";
-        }
-        if (!isEmpty()) {
-            ReservationNode heapNode = poll();
-            tempList.add(heapNode);
-            res += heapNode.getPatronId();
-        }
-        for (ReservationNode heapNode : tempList)
-            insertNode(heapNode);
-        return res;
+        StringBuilderSink res = new StringBuilderSink();
+        writePatrons(res);
+        return res.toString();
     }
 
 }
@@ -0,0 +1,58 @@
+import java.io.IOException;
+
+/**
+ * The `MutingSink` class passes output on to another sink unless it is muted. Commands replayed from a
+ * write-ahead log run with the sink muted, because their results were already written by an earlier run.
+ */
+public class MutingSink implements OutputSink {
+    private final OutputSink target;
+    private boolean muted;
+
+    public MutingSink(OutputSink target) {
+        this.target = target;
+    }
+
+    // Discards all output while muted is true.
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    @Override
+    public OutputSink append(String text) {
+        if (!muted) {
+            target.append(text);
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        if (!muted) {
+            target.append(value);
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        if (!muted) {
+            target.append(c);
+        }
+        return this;
+    }
+
+    @Override
+    public void endCommand() throws IOException {
+        target.endCommand();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * The `NullSink` class is an `OutputSink` that discards all output, for runs that only measure the engine.
+ */
+public class NullSink implements OutputSink {
+
+    @Override
+    public OutputSink append(String text) {
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        return this;
+    }
+
+    @Override
+    public void endCommand() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
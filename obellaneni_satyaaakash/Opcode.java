@@ -0,0 +1,8 @@
+/**
+ * The `Opcode` enum lists the gatorLibrary commands understood by the `CommandParser`.
+ */
+public enum Opcode {
+    INSERT_BOOK, PRINT_BOOK, PRINT_BOOKS, PRINT_BOOKS_PAGE, COUNT_BOOKS, PRINT_BOOKS_BY_AUTHOR,
+    SEARCH_TITLE, BORROW_BOOK, RETURN_BOOK, DELETE_BOOK, FIND_CLOSEST_BOOK,
+    COLOR_FLIP_COUNT, CANCEL_RESERVATION, UPDATE_PRIORITY, BULK_LOAD, END_BULK_LOAD, QUIT, STATS, INVALID;
+}
@@ -0,0 +1,48 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The `OutputSink` interface receives the text produced by library operations.
+ * Results are appended piece by piece (strings, numbers and characters) so an implementation can encode them
+ * directly to its destination without building intermediate strings.
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     * Appends a piece of text.
+     *
+     * @param text The text to append.
+     * @return This sink, for chaining.
+     */
+    OutputSink append(String text);
+
+    /**
+     * Appends the decimal representation of an integer.
+     *
+     * @param value The value to append.
+     * @return This sink, for chaining.
+     */
+    OutputSink append(int value);
+
+    /**
+     * Appends a single character.
+     *
+     * @param c The character to append.
+     * @return This sink, for chaining.
+     */
+    OutputSink append(char c);
+
+    /**
+     * Signals that one input command has been fully processed, letting the sink apply its flush policy.
+     *
+     * @throws IOException If an I/O error occurs while flushing.
+     */
+    void endCommand() throws IOException;
+
+    /**
+     * Writes any buffered output to its destination.
+     *
+     * @throws IOException If an I/O error occurs while flushing.
+     */
+    void flush() throws IOException;
+}
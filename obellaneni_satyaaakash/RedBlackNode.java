@@ -12,6 +12,8 @@ public class RedBlackNode {
     RedBlackNode left, right, parent; // References to left child, right child, and parent nodes
     NodeColor color;          // Color of the node (RED or BLACK) for Red-Black Tree balancing
     MinHeap minHeap;          // MinHeap to manage reservations for the book
+    int recolorId;            // Last tree operation that recorded this node's original color
+    int size;                 // Number of books in the subtree rooted here; 0 for the nil sentinel
 
     // Constructor without parameters
     public RedBlackNode() {
@@ -35,7 +37,8 @@ public class RedBlackNode {
         this.color = NodeColor.BLACK;
         this.isAvailable = isAvailable;
         this.borrowedBy = -1;
-        minHeap = new MinHeap(20); // Initialize the MinHeap with a capacity of 20 reservations
+        this.size = 1;
+        minHeap = new MinHeap(); // The reservation array is allocated by the first reservation
     }
 
     /**
@@ -48,6 +51,61 @@ public class RedBlackNode {
         this.color = NodeColor.BLACK;
     }
 
+    /**
+     * Writes the details of the book, followed by a blank line, to the given sink.
+     *
+     * @param out The sink to write to.
+     */
+    public void writeTo(OutputSink out) {
+        writeBook(out, bookId, bookName, authorName, isAvailable, borrowedBy, minHeap);
+    }
+
+    /**
+     * Writes the details of a book, followed by a blank line, in the format of PrintBook.
+     *
+     * @param out         The sink to write to.
+     * @param bookId      The unique identifier of the book.
+     * @param bookName    The title of the book.
+     * @param authorName  The author of the book.
+     * @param isAvailable The availability status of the book.
+     * @param borrowedBy  The patron who borrowed the book, or -1.
+     * @param minHeap     The reservations of the book, or null if it has none.
+     */
+    static void writeBook(OutputSink out, int bookId, String bookName, String authorName, boolean isAvailable,
+                          int borrowedBy, MinHeap minHeap) {
+        writeBookFields(out, bookId, bookName, authorName, isAvailable, borrowedBy);
+        if (minHeap != null) {
+            minHeap.writePatrons(out);
+        }
+        out.append("]\n\n");
+    }
+
+    /**
+     * Writes the details of a book up to the opening bracket of its reservation list; the caller writes the
+     * patron IDs and closes the list with "]\n\n".
+     *
+     * @param out         The sink to write to.
+     * @param bookId      The unique identifier of the book.
+     * @param bookName    The title of the book.
+     * @param authorName  The author of the book.
+     * @param isAvailable The availability status of the book.
+     * @param borrowedBy  The patron who borrowed the book, or -1.
+     */
+    static void writeBookFields(OutputSink out, int bookId, String bookName, String authorName, boolean isAvailable,
+                                int borrowedBy) {
+        out.append("BookID = ").append(bookId)
+                .append("\nTitle = \"").append(bookName)
+                .append("\"\nAuthor = \"").append(authorName)
+                .append("\"\nAvailability = \"").append(isAvailable ? "Yes" : "No")
+                .append("\"\nBorrowedBy = ");
+        if (borrowedBy == -1) {
+            out.append("None");
+        } else {
+            out.append(borrowedBy);
+        }
+        out.append("\nReservations = [");
+    }
+
     /**
      * Overrides the default toString method to provide a string representation of the book node.
      *
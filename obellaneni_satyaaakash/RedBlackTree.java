@@ -1,55 +1,241 @@
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.*;
 
 // RedBlackTree class represents a Red-Black Tree data structure for managing books and patrons.
-class RedBlackTree {
+class RedBlackTree implements LibraryEngine, Checkpointable {
 
     // Two maps to store the color of nodes before and after an operation.
-    public static Map<Integer, NodeColor> hm1 = new HashMap<>();
-    public static Map<Integer, NodeColor> hm2 = new HashMap<>();
+    // Only maintained in the differential verification mode (see VERIFY_FLIPS).
+    private Map<Integer, NodeColor> hm1 = new HashMap<>();
+    private Map<Integer, NodeColor> hm2 = new HashMap<>();
 
-    // Constants for an empty node and initializations.
-    private final RedBlackNode nil = EmptyRBNode.nil;
+    // When enabled (-DgatorLibrary.verifyFlips=true), every insert and delete also recomputes the
+    // color flips with the full-tree snapshot diff and checks it against the incremental counter.
+    static final boolean VERIFY_FLIPS = Boolean.getBoolean("gatorLibrary.verifyFlips");
+
+    // Sentinel for every missing child of this tree. Each tree owns its own, because deletes write the
+    // sentinel's parent link and trees used from different threads must not share that field.
+    private final RedBlackNode nil = new RedBlackNode(-1);
     public int flipCount; // Counter to track color flip operations.
     private RedBlackNode root; // Root of the Red-Black Tree.
+    private int bookCount; // Number of books in the tree.
+
+    // Secondary indexes over the same nodes, by title and by author, kept in step with the tree.
+    private final BookIndex titles = BookIndex.byTitle();
+    private final BookIndex authors = BookIndex.byAuthor();
+
+    // Node reached by the previous lookup, where the next one starts, or nil to start at the root.
+    // Rotations keep it valid, as they only relink nodes; delete moves it off the removed node.
+    private RedBlackNode finger = nil;
+    private int fingerDepth;    // Depth of the finger when it was set
+    private int fingerMisses;   // Consecutive lookups that gave up climbing from the finger
+    private static final int MAX_FINGER_MISSES = 4;
+    private long fingerLookups; // All lookups
+    private long fingerHits;    // Lookups that descended from the finger or a near ancestor of it
+    private long lookupSteps;   // Nodes visited by all lookups, climbing and descending
+
+    // Nodes recolored during the current operation together with the color each had before it.
+    private final List<RedBlackNode> recoloredNodes = new ArrayList<>();
+    private final List<NodeColor> originalColors = new ArrayList<>();
+    private int operationId; // Identifies the current operation so each node is recorded once.
 
-    // StringBuilder to accumulate results and print them later.
-    public static StringBuilder resultString = new StringBuilder();
+    // Sequence number given to the next reservation; orders reservations of equal priority.
+    private long reservationSequence;
 
-    // Constructor initializes an empty Red-Black Tree.
+    // Sink that receives the results of every operation.
+    private final OutputSink out;
+
+    // Constructor initializes an empty Red-Black Tree that keeps its results in memory.
     public RedBlackTree() {
+        this(new StringBuilderSink());
+    }
+
+    // Constructor initializes an empty Red-Black Tree that writes its results to the given sink.
+    public RedBlackTree(OutputSink out) {
         this.root = nil;
         this.flipCount = 0;
+        this.out = out;
     }
 
-    // Inserts a new book into the Red-Black Tree.
+    // Returns the sink that receives the results of this tree's operations.
+    public OutputSink getOutput() {
+        return out;
+    }
+
+    // Returns the root node, or the nil sentinel when the tree is empty.
+    RedBlackNode getRoot() {
+        return root;
+    }
+
+    // Returns the sentinel that stands for every missing child.
+    RedBlackNode getNil() {
+        return nil;
+    }
+
+    // Returns the number of books in the tree.
+    int size() {
+        return bookCount;
+    }
+
+    // Inserts a new book into the Red-Black Tree; the book is available when isAvailable is "Yes".
     public void insertBook(int bookId, String bookName, String authorName, String isAvailable) {
-        RedBlackNode book = new RedBlackNode(bookId, bookName, authorName, isAvailable.equals("Yes"));
-        transferMap();
-        // Set the color of the node based on whether the tree was empty.
-        if (root == nil) {
-            hm1.put(bookId, NodeColor.BLACK);
-        } else {
-            hm1.put(bookId, NodeColor.RED);
+        insertBook(bookId, bookName, authorName, isAvailable.equals("Yes"));
+    }
+
+    // Inserts a new book into the Red-Black Tree.
+    public void insertBook(int bookId, String bookName, String authorName, boolean isAvailable) {
+        RedBlackNode book = new RedBlackNode(bookId, bookName, authorName, isAvailable);
+        int flipsBefore = this.flipCount;
+        if (VERIFY_FLIPS) {
+            transferMap();
+            // Set the color of the node based on whether the tree was empty.
+            if (root == nil) {
+                hm1.put(bookId, NodeColor.BLACK);
+            } else {
+                hm1.put(bookId, NodeColor.RED);
+            }
         }
+        beginRecolor();
         insert(book);
-        populateLatestMap();
-        colorFlipCount();
+        endRecolor();
+        if (VERIFY_FLIPS) {
+            populateLatestMap();
+            verifyFlipCount(flipsBefore);
+        }
     }
 
-    // Counts the number of color flips that occurred during the last operation.
-    private void colorFlipCount() {
+    // Inserts the books of a batch sorted by ID with a single rebuild of the tree.
+    @Override
+    public void bulkLoad(BookBatch books) {
+        bulkLoad(books, 0, books.size);
+    }
+
+    /**
+     * Inserts the books from..to-1 of a batch sorted by ID. The existing books and the new ones are merged
+     * in ID order, a book already in the tree keeping its place and state, and the tree is rebuilt perfectly
+     * balanced in linear time: every level is full except possibly the last, whose books are red while all
+     * others are black. Every book already in the tree whose color the rebuild changes counts as one color
+     * flip; the new books and the ignored repeated IDs add none. The title and author indexes take O(k log k)
+     * for the k new books when they are empty and O(k log n) otherwise (see `BookIndex.addAll`).
+     *
+     * @param books The batch of books, in strictly ascending ID order.
+     * @param from  Index of the first book to insert.
+     * @param to    Index after the last book to insert.
+     */
+    void bulkLoad(BookBatch books, int from, int to) {
+        int flipsBefore = this.flipCount;
+        if (VERIFY_FLIPS) {
+            transferMap();
+        }
+        RedBlackNode[] merged = new RedBlackNode[bookCount + to - from];
+        RedBlackNode[] added = new RedBlackNode[to - from];
+        int count = 0;
+        int addedCount = 0;
+        int next = from;
+        for (RedBlackNode book = root == nil ? null : treeMinimum(root); book != null; book = successor(book)) {
+            while (next < to && books.bookIds[next] < book.bookId) {
+                merged[count++] = added[addedCount++] = newBook(books, next++);
+            }
+            if (next < to && books.bookIds[next] == book.bookId) {
+                next++;
+            }
+            merged[count++] = book;
+        }
+        while (next < to) {
+            merged[count++] = added[addedCount++] = newBook(books, next++);
+        }
+        titles.addAll(added, addedCount);
+        authors.addAll(added, addedCount);
+        // The levels above redDepth are full; only the books on level redDepth are red.
+        int redDepth = 31 - Integer.numberOfLeadingZeros(count + 1);
+        root = build(merged, 0, count - 1, 0, redDepth);
+        root.parent = nil;
+        bookCount = count;
+        if (VERIFY_FLIPS) {
+            populateLatestMap();
+            verifyFlipCount(flipsBefore);
+        }
+    }
+
+    private RedBlackNode newBook(BookBatch books, int i) {
+        RedBlackNode book = new RedBlackNode(books.bookIds[i], books.bookNames[i], books.authorNames[i],
+                books.available[i]);
+        book.color = null; // Marks the book as new, so its first color is not counted as a flip.
+        return book;
+    }
+
+    // Links books lo..hi into a balanced subtree at the given depth and returns its root, or nil if empty.
+    private RedBlackNode build(RedBlackNode[] books, int lo, int hi, int depth, int redDepth) {
+        if (lo > hi) {
+            return nil;
+        }
+        int mid = (lo + hi) >>> 1;
+        RedBlackNode book = books[mid];
+        NodeColor color = depth == redDepth ? NodeColor.RED : NodeColor.BLACK;
+        if (book.color != null && book.color != color) {
+            this.flipCount++;
+        }
+        book.color = color;
+        book.left = build(books, lo, mid - 1, depth + 1, redDepth);
+        book.right = build(books, mid + 1, hi, depth + 1, redDepth);
+        book.left.parent = book;
+        book.right.parent = book;
+        book.size = hi - lo + 1;
+        return book;
+    }
+
+    // Starts tracking the recolorings made by a single insert or delete.
+    private void beginRecolor() {
+        operationId++;
+        recoloredNodes.clear();
+        originalColors.clear();
+    }
+
+    // Recolors a node, remembering its color from before the current operation the first time it is touched.
+    private void setColor(RedBlackNode node, NodeColor color) {
+        if (node != nil && node.recolorId != operationId) {
+            node.recolorId = operationId;
+            recoloredNodes.add(node);
+            originalColors.add(node.color);
+        }
+        node.color = color;
+    }
+
+    // Adds one flip for every node whose color at the end of the operation differs from its color before it.
+    private void endRecolor() {
+        for (int i = 0; i < recoloredNodes.size(); i++) {
+            if (recoloredNodes.get(i).color != originalColors.get(i)) {
+                this.flipCount++;
+            }
+        }
+    }
+
+    // Counts the number of color flips that occurred during the last operation from the two snapshots.
+    private int colorFlipCount() {
+        int flips = 0;
         for (Map.Entry<Integer, NodeColor> entry : hm1.entrySet()) {
             if (entry.getValue() != hm2.get(entry.getKey())) {
-                this.flipCount++;
+                flips++;
             }
         }
+        return flips;
+    }
+
+    // Checks the incremental flip counter against the snapshot diff of the last operation.
+    private void verifyFlipCount(int flipsBefore) {
+        int expected = colorFlipCount();
+        if (this.flipCount - flipsBefore != expected) {
+            throw new IllegalStateException("Color flip mismatch: counted " + (this.flipCount - flipsBefore)
+                    + " but snapshot diff found " + expected);
+        }
     }
 
     // Prints the color flip count to the result string.
     public void getColorFlipCount() {
-        resultString.append("Color Flip Count : " + this.flipCount + "\n");
+        out.append("Color Flip Count : ").append(this.flipCount).append('\n');
     }
 
     // Updates hm2 with the color information after an operation.
@@ -77,6 +263,9 @@ class RedBlackTree {
     // Inserts a new node into the Red-Black Tree and fixes any violations of the Red-Black Tree properties.
     private void insert(RedBlackNode book) {
         RedBlackNode tempRoot = root;
+        book.left = nil;
+        book.right = nil;
+        book.size = 1;
         if (root == nil) {
             root = book;
             book.color = NodeColor.BLACK;
@@ -93,7 +282,12 @@ class RedBlackTree {
                         tempRoot = tempRoot.left;
                     }
                 } else if (book.bookId == tempRoot.bookId) {
-                    return; // The book with the same ID is already in the tree.
+                    // The book with the same ID is already in the tree. Its color was recorded as RED for
+                    // this operation, so a black node has always been reported as one flip.
+                    if (tempRoot.color == NodeColor.BLACK) {
+                        this.flipCount++;
+                    }
+                    return;
                 } else {
                     if (tempRoot.right == nil) {
                         tempRoot.right = book;
@@ -104,8 +298,15 @@ class RedBlackTree {
                     }
                 }
             }
+            // The book was linked, so every ancestor gains one book before the rotations move them.
+            for (RedBlackNode ancestor = book.parent; ancestor != nil; ancestor = ancestor.parent) {
+                ancestor.size++;
+            }
             fixInsertViolation(book);
         }
+        bookCount++;
+        titles.add(book);
+        authors.add(book);
     }
 
     // Fixes any violations of the Red-Black Tree properties after an insertion.
@@ -118,11 +319,11 @@ class RedBlackTree {
 
                 if (uncle != nil && uncle.color == NodeColor.RED) {
                     // Case 1: Recoloring
-                    book.parent.color = NodeColor.BLACK;
+                    setColor(book.parent, NodeColor.BLACK);
                     if (book.parent.parent.color != NodeColor.RED && book.parent.parent != root) {
-                        book.parent.parent.color = NodeColor.RED;
+                        setColor(book.parent.parent, NodeColor.RED);
                     }
-                    uncle.color = NodeColor.BLACK;
+                    setColor(uncle, NodeColor.BLACK);
                     book = book.parent.parent;
                     continue;
                 }
@@ -132,17 +333,17 @@ class RedBlackTree {
                     rotateLeft(book);
                 }
                 // Case 3: Recoloring and right rotation
-                book.parent.color = NodeColor.BLACK;
-                book.parent.parent.color = NodeColor.RED;
+                setColor(book.parent, NodeColor.BLACK);
+                setColor(book.parent.parent, NodeColor.RED);
                 rotateRight(book.parent.parent);
             } else {
                 // Symmetric cases for a right child.
                 uncle = book.parent.parent.left;
                 if (uncle != nil && uncle.color == NodeColor.RED) {
                     // Case 1: Recoloring
-                    book.parent.color = NodeColor.BLACK;
-                    book.parent.parent.color = NodeColor.RED;
-                    uncle.color = NodeColor.BLACK;
+                    setColor(book.parent, NodeColor.BLACK);
+                    setColor(book.parent.parent, NodeColor.RED);
+                    setColor(uncle, NodeColor.BLACK);
                     book = book.parent.parent;
                     continue;
                 }
@@ -152,16 +353,23 @@ class RedBlackTree {
                     rotateRight(book);
                 }
                 // Case 3: Recoloring and left rotation
-                book.parent.color = NodeColor.BLACK;
-                book.parent.parent.color = NodeColor.RED;
+                setColor(book.parent, NodeColor.BLACK);
+                setColor(book.parent.parent, NodeColor.RED);
                 rotateLeft(book.parent.parent);
             }
         }
-        root.color = NodeColor.BLACK;
+        setColor(root, NodeColor.BLACK);
     }
 
     // Performs a left rotation on the given node.
     private void rotateLeft(RedBlackNode book) {
+        if (LibraryMetrics.ENABLED) {
+            LibraryMetrics.recordRotation();
+        }
+        // The pivot takes over the whole subtree; the rotated book keeps its left subtree and the pivot's left.
+        RedBlackNode pivot = book.right;
+        pivot.size = book.size;
+        book.size = book.left.size + pivot.left.size + 1;
         if (book.parent != nil) {
             if (book == book.parent.left) {
                 book.parent.left = book.right;
@@ -189,6 +397,12 @@ class RedBlackTree {
 
     // Performs a right rotation on the given node.
     private void rotateRight(RedBlackNode book) {
+        if (LibraryMetrics.ENABLED) {
+            LibraryMetrics.recordRotation();
+        }
+        RedBlackNode pivot = book.left;
+        pivot.size = book.size;
+        book.size = book.right.size + pivot.right.size + 1;
         if (book.parent != nil) {
             if (book == book.parent.left) {
                 book.parent.left = book.left;
@@ -215,26 +429,111 @@ class RedBlackTree {
     }
 
     // Searches for a book with the given ID in the Red-Black Tree and returns it.
+    // The search climbs from the finger to the lowest node whose subtree can hold the ID and descends from
+    // there, so runs of nearby IDs skip most of the path from the root.
     public RedBlackNode printBook(int bookId) {
-        RedBlackNode temp = root;
-        if (root.bookId == -1)
+        if (root == nil)
             return null;
+        RedBlackNode temp = climbFromFinger(bookId);
         while (true) {
+            lookupSteps++;
             if (bookId < temp.bookId) {
                 if (temp.left == nil) {
+                    finger = temp;
                     return null;
                 } else {
                     temp = temp.left;
+                    fingerDepth++;
                 }
             } else if (bookId == temp.bookId) {
+                finger = temp;
                 return temp;
             } else {
                 if (temp.right == nil) {
+                    finger = temp;
                     return null;
                 } else {
                     temp = temp.right;
+                    fingerDepth++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the node a lookup of bookId descends from and sets fingerDepth to its depth: the lowest ancestor
+     * of the finger whose subtree spans bookId, or the root. Climbing more than half the finger's depth costs
+     * more than it saves, so such a lookup starts at the root instead; after several of those in a row only
+     * every 16th lookup tries the finger, until one succeeds again.
+     */
+    private RedBlackNode climbFromFinger(int bookId) {
+        fingerLookups++;
+        RedBlackNode temp = finger;
+        if (temp == nil || fingerMisses >= MAX_FINGER_MISSES && (fingerLookups & 15) != 0) {
+            fingerDepth = 0;
+            return root;
+        }
+        int limit = fingerDepth / 2;
+        int climbed = 0;
+        if (bookId > temp.bookId) {
+            // Everything below a left child is smaller than its parent, which bounds the subtree from above.
+            while (temp.parent != nil && !(temp == temp.parent.left && bookId < temp.parent.bookId)) {
+                temp = temp.parent;
+                if (++climbed > limit || temp.bookId == bookId) {
+                    break;
                 }
             }
+        } else if (bookId < temp.bookId) {
+            while (temp.parent != nil && !(temp == temp.parent.right && bookId > temp.parent.bookId)) {
+                temp = temp.parent;
+                if (++climbed > limit || temp.bookId == bookId) {
+                    break;
+                }
+            }
+        }
+        lookupSteps += climbed;
+        if (climbed > limit) {
+            fingerMisses++;
+            fingerDepth = 0;
+            return root;
+        }
+        fingerMisses = 0;
+        fingerHits++;
+        fingerDepth = Math.max(0, fingerDepth - climbed); // Rotations since the finger was set may have moved it.
+        return temp;
+    }
+
+    // Writes how often lookups started from the finger and how many nodes they visited on average.
+    @Override
+    public void printStats(PrintStream err) {
+        err.printf("Finger search: %d of %d lookups started from the finger (%.1f%%), %.2f nodes visited per lookup%n",
+                fingerHits, fingerLookups, fingerLookups == 0 ? 0.0 : 100.0 * fingerHits / fingerLookups,
+                fingerLookups == 0 ? 0.0 : (double) lookupSteps / fingerLookups);
+    }
+
+    // Writes the number of books, the height of the tree and the metrics.
+    @Override
+    public void stats() {
+        LibraryMetrics.writeTo(out, bookCount, height(root));
+    }
+
+    @Override
+    public void publishGauges() {
+        LibraryMetrics.publishGauges(bookCount, height(root));
+    }
+
+    // Returns the number of nodes on the longest path from the book down to a leaf.
+    int height(RedBlackNode book) {
+        return book == nil ? 0 : 1 + Math.max(height(book.left), height(book.right));
+    }
+
+    // Writes the details of the book with the given ID, or a message that it is not in the library.
+    public void writeBook(int bookId) {
+        RedBlackNode book = printBook(bookId);
+        if (book == null) {
+            out.append("Book ").append(bookId).append(" not found in the library\n");
+        } else {
+            book.writeTo(out);
         }
     }
 
@@ -242,27 +541,85 @@ class RedBlackTree {
     public void deleteBook(int bookId) {
         RedBlackNode book = printBook(bookId);
         if (book == null) {
-            resultString.append("Book " + bookId + " is no longer available.\n");
+            out.append("Book ").append(bookId).append(" is no longer available.\n");
             return;
         }
-        transferMap();
-        hm1.remove(bookId);
+        int flipsBefore = this.flipCount;
+        if (VERIFY_FLIPS) {
+            transferMap();
+            hm1.remove(bookId);
+        }
+        beginRecolor();
         delete(book);
-        populateLatestMap();
-        colorFlipCount();
+        endRecolor();
+        if (VERIFY_FLIPS) {
+            populateLatestMap();
+            verifyFlipCount(flipsBefore);
+        }
+        bookCount--;
         if (book.minHeap.isEmpty()) {
-            resultString.append("Book " + bookId + " is no longer available.\n");
+            out.append("Book ").append(bookId).append(" is no longer available.\n");
         } else {
-            resultString.append("Book " + bookId + " is no longer available. Reservations made by Patrons "
-                    + book.minHeap + " have been cancelled!\n");
+            out.append("Book ").append(bookId).append(" is no longer available. Reservations made by Patrons ");
+            book.minHeap.writePatrons(out);
+            out.append(" have been cancelled!\n");
+        }
+    }
+
+    /**
+     * Removes a book without writing any output, so it can be attached to another tree. The recolorings
+     * made by the removal are not counted as color flips.
+     *
+     * @param bookId The ID of the book to remove.
+     * @return The removed book with its loan and reservations, or null if it is not in the tree.
+     */
+    RedBlackNode detachBook(int bookId) {
+        RedBlackNode book = printBook(bookId);
+        if (book == null)
+            return null;
+        int flips = this.flipCount;
+        beginRecolor();
+        delete(book);
+        endRecolor();
+        this.flipCount = flips;
+        bookCount--;
+        if (VERIFY_FLIPS) {
+            hm2.clear();
+            populateLatestMap();
+        }
+        return book;
+    }
+
+    /**
+     * Adds a book detached from another tree, keeping its loan and reservations. The recolorings made by the
+     * insertion are not counted as color flips.
+     *
+     * @param book   The detached book; its ID must not be in this tree.
+     * @param source The tree the book was detached from, whose reservation sequence numbers it carries.
+     */
+    void attachBook(RedBlackNode book, RedBlackTree source) {
+        int flips = this.flipCount;
+        book.recolorId = 0; // Operation IDs of the source tree mean nothing here.
+        beginRecolor();
+        insert(book);
+        endRecolor();
+        this.flipCount = flips;
+        // Reservations made here later must still sort after the ones the book brings along.
+        reservationSequence = Math.max(reservationSequence, source.reservationSequence);
+        if (VERIFY_FLIPS) {
+            populateLatestMap();
         }
     }
 
     // Deletes a node from the Red-Black Tree and fixes any violations of the Red-Black Tree properties.
     private boolean delete(RedBlackNode z) {
+        titles.remove(z);
+        authors.remove(z);
         RedBlackNode y = z;
         NodeColor y_original_color = y.color;
         RedBlackNode x;
+        // Lowest node whose subtree loses a book; every node from it up to the root shrinks by one.
+        RedBlackNode shrunk = z.parent;
         if (z.left == nil) {
             x = z.right;
             transplant(z, z.right);
@@ -273,6 +630,9 @@ class RedBlackTree {
             y = treeMaximum(z.left);
             y_original_color = y.color;
             x = y.left;
+            // y moves up into z's place, taking over z's subtree without z.
+            shrunk = y.parent == z ? y : y.parent;
+            y.size = z.size;
             if (y.parent == z)
                 x.parent = y;
             else {
@@ -283,11 +643,16 @@ class RedBlackTree {
             transplant(z, y);
             y.right = z.right;
             y.right.parent = y;
-            y.color = z.color;
+            setColor(y, z.color);
+        }
+        for (RedBlackNode ancestor = shrunk; ancestor != nil; ancestor = ancestor.parent) {
+            ancestor.size--;
         }
         if (y_original_color == NodeColor.BLACK) {
             fixDeleteViolation(x);
         }
+        // The removed node must not stay the finger; its replacement or former parent is still in the tree.
+        finger = y != z ? y : z.parent;
         return true;
     }
 
@@ -326,99 +691,240 @@ class RedBlackTree {
             if (x == x.parent.left) {
                 RedBlackNode w = x.parent.right;
                 if (w.color == NodeColor.RED) {
-                    w.color = NodeColor.BLACK;
-                    x.parent.color = NodeColor.RED;
+                    setColor(w, NodeColor.BLACK);
+                    setColor(x.parent, NodeColor.RED);
                     rotateLeft(x.parent);
                     w = x.parent.right;
                 }
                 if (w.left.color == NodeColor.BLACK && w.right.color == NodeColor.BLACK) {
-                    w.color = NodeColor.RED;
+                    setColor(w, NodeColor.RED);
                     x = x.parent;
                     continue;
                 } else if (w.right.color == NodeColor.BLACK) {
-                    w.left.color = NodeColor.BLACK;
-                    w.color = NodeColor.RED;
+                    setColor(w.left, NodeColor.BLACK);
+                    setColor(w, NodeColor.RED);
                     rotateRight(w);
                     w = x.parent.right;
                 }
                 if (w.right.color == NodeColor.RED) {
-                    w.color = x.parent.color;
-                    x.parent.color = NodeColor.BLACK;
-                    w.right.color = NodeColor.BLACK;
+                    setColor(w, x.parent.color);
+                    setColor(x.parent, NodeColor.BLACK);
+                    setColor(w.right, NodeColor.BLACK);
                     rotateLeft(x.parent);
                     x = root;
                 }
             } else {
                 RedBlackNode w = x.parent.left;
                 if (w.color == NodeColor.RED) {
-                    w.color = NodeColor.BLACK;
-                    x.parent.color = NodeColor.RED;
+                    setColor(w, NodeColor.BLACK);
+                    setColor(x.parent, NodeColor.RED);
                     rotateRight(x.parent);
                     w = x.parent.left;
                 }
                 if (w.right.color == NodeColor.BLACK && w.left.color == NodeColor.BLACK) {
-                    w.color = NodeColor.RED;
+                    setColor(w, NodeColor.RED);
                     x = x.parent;
                     continue;
                 } else if (w.left.color == NodeColor.BLACK) {
-                    w.right.color = NodeColor.BLACK;
-                    w.color = NodeColor.RED;
+                    setColor(w.right, NodeColor.BLACK);
+                    setColor(w, NodeColor.RED);
                     rotateLeft(w);
                     w = x.parent.left;
                 }
                 if (w.left.color == NodeColor.RED) {
-                    w.color = x.parent.color;
-                    x.parent.color = NodeColor.BLACK;
-                    w.left.color = NodeColor.BLACK;
+                    setColor(w, x.parent.color);
+                    setColor(x.parent, NodeColor.BLACK);
+                    setColor(w.left, NodeColor.BLACK);
                     rotateRight(x.parent);
                     x = root;
                 }
             }
         }
-        x.color = NodeColor.BLACK;
+        setColor(x, NodeColor.BLACK);
     }
 
+    // Prints every book with an ID in [bookId1, bookId2], in ID order.
     public void printBooks(int bookId1, int bookId2) {
-        List<RedBlackNode> listOfBooks = new ArrayList<>();
-        inorder(this.root, bookId1, bookId2, listOfBooks, true);
-        for (RedBlackNode book : listOfBooks)
-            resultString.append(book + "\n");
+        BookRangeCursor cursor = rangeCursor(bookId1, bookId2);
+        while (cursor.hasNext())
+            cursor.next().writeTo(out);
     }
 
-    public void findClosestBook(int targetId) {
-        int minDiff = Integer.MAX_VALUE;
-        List<RedBlackNode> listOfBooks = new ArrayList<>();
-        inorder(this.root, -1, -1, listOfBooks, false);
-        List<RedBlackNode> res = new ArrayList<>();
-        for (RedBlackNode book : listOfBooks) {
-            int diff = Math.abs(targetId - book.bookId);
-            if (minDiff > diff) {
-                minDiff = diff;
-                res = new ArrayList<>();
-                res.add(book);
-            } else if (minDiff == diff)
-                res.add(book);
-        }
-        Collections.sort(res, (x, y) -> {
-            return x.bookId - y.bookId;
-        });
-        for (RedBlackNode book : res)
-            resultString.append(book + "\n");
-    }
-
-    private void inorder(RedBlackNode book, int lower, int upper, List<RedBlackNode> listOfBooks, boolean flag) {
-        if (book == nil)
+    /**
+     * Writes a page of the books with an ID in [bookId1, bookId2]: the books after the first offset ones, in ID
+     * order, and at most limit of them. The first book of the page is found by rank, so the page costs
+     * O(log n + limit) however far into the range it starts.
+     *
+     * @param bookId1 Inclusive lower bound of the range.
+     * @param bookId2 Inclusive upper bound of the range.
+     * @param offset  Number of books of the range to skip; negative counts as 0.
+     * @param limit   Largest number of books to write; none are written if it is not positive.
+     */
+    public void printBooks(int bookId1, int bookId2, int offset, int limit) {
+        if (bookId1 > bookId2 || limit <= 0) {
             return;
-        inorder(book.left, lower, upper, listOfBooks, flag);
-        if (flag) {
-            if (book.bookId >= lower && book.bookId <= upper)
-                listOfBooks.add(book);
-        } else {
-            listOfBooks.add(book);
         }
-        inorder(book.right, lower, upper, listOfBooks, flag);
+        long first = (long) rank(bookId1) + Math.max(offset, 0);
+        long end = Math.min(rank(bookId2) + (contains(bookId2) ? 1 : 0), first + limit);
+        RedBlackNode book = first < end ? select((int) first) : null;
+        for (long i = first; i < end; i++) {
+            book.writeTo(out);
+            book = successor(book);
+        }
     }
 
+    // Writes the number of books with an ID in [bookId1, bookId2].
+    public void countBooks(int bookId1, int bookId2) {
+        out.append("Book Count : ").append(count(bookId1, bookId2)).append('\n');
+    }
+
+    // Returns the number of books with an ID in [lo, hi] in O(log n).
+    int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return rank(hi) - rank(lo) + (contains(hi) ? 1 : 0);
+    }
+
+    /**
+     * Returns the number of books with an ID smaller than the given one, adding up the subtree sizes to the
+     * left of a single descent.
+     *
+     * @param bookId The ID, which need not be in the tree.
+     * @return The rank the book has or would have, from 0.
+     */
+    int rank(int bookId) {
+        int rank = 0;
+        RedBlackNode temp = root;
+        while (temp != nil) {
+            if (bookId <= temp.bookId) {
+                temp = temp.left;
+            } else {
+                rank += temp.left.size + 1;
+                temp = temp.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the book of the given rank, descending by the subtree sizes.
+     *
+     * @param k The rank, from 0 for the book with the smallest ID.
+     * @return The book, or null if k is not below the number of books.
+     */
+    RedBlackNode select(int k) {
+        if (k < 0 || k >= root.size) {
+            return null;
+        }
+        RedBlackNode temp = root;
+        while (true) {
+            if (k < temp.left.size) {
+                temp = temp.left;
+            } else if (k == temp.left.size) {
+                return temp;
+            } else {
+                k -= temp.left.size + 1;
+                temp = temp.right;
+            }
+        }
+    }
+
+    // Checks whether a book with the given ID is in the tree, without moving the finger.
+    private boolean contains(int bookId) {
+        RedBlackNode temp = root;
+        while (temp != nil && temp.bookId != bookId) {
+            temp = bookId < temp.bookId ? temp.left : temp.right;
+        }
+        return temp != nil;
+    }
+
+    // Writes the books by the given author in ID order.
+    public void printBooksByAuthor(String author) {
+        for (RedBlackNode book : authors.equalTo(author)) {
+            book.writeTo(out);
+        }
+    }
+
+    // Writes the books whose title starts with the given prefix, in title order and then in ID order.
+    public void searchTitle(String prefix) {
+        for (RedBlackNode book : titles.withPrefix(prefix)) {
+            book.writeTo(out);
+        }
+    }
+
+    // Returns a view of the books by the given author, in ID order.
+    NavigableSet<RedBlackNode> booksByAuthor(String author) {
+        return authors.equalTo(author);
+    }
+
+    // Returns a view of the books whose title starts with the given prefix, in title order and then in ID order.
+    NavigableSet<RedBlackNode> booksWithTitlePrefix(String prefix) {
+        return titles.withPrefix(prefix);
+    }
+
+    // Returns a cursor over the books with IDs in [lo, hi], in ID order.
+    public BookRangeCursor rangeCursor(int lo, int hi) {
+        return new BookRangeCursor(this, lo, hi);
+    }
+
+    // Returns the book with the next larger ID than the given book, or null if it is the last one.
+    RedBlackNode successor(RedBlackNode book) {
+        if (book.right != nil)
+            return treeMinimum(book.right);
+        RedBlackNode parent = book.parent;
+        while (parent != nil && book == parent.right) {
+            book = parent;
+            parent = parent.parent;
+        }
+        return parent == nil ? null : parent;
+    }
+
+    // Prints the book(s) whose ID is closest to targetId; both neighbours are printed, in ID order, on a tie.
+    public void findClosestBook(int targetId) {
+        RedBlackNode floor = floorBook(targetId);
+        RedBlackNode ceiling = ceilingBook(targetId);
+        long floorDiff = floor == null ? Long.MAX_VALUE : (long) targetId - floor.bookId;
+        long ceilingDiff = ceiling == null ? Long.MAX_VALUE : (long) ceiling.bookId - targetId;
+        if (floor != null && floorDiff <= ceilingDiff)
+            floor.writeTo(out);
+        if (ceiling != null && ceiling != floor && ceilingDiff <= floorDiff)
+            ceiling.writeTo(out);
+    }
+
+    // Returns the book with the largest ID less than or equal to bookId, or null if there is none.
+    public RedBlackNode floorBook(int bookId) {
+        RedBlackNode floor = null;
+        RedBlackNode temp = root;
+        while (temp != nil) {
+            if (bookId < temp.bookId) {
+                temp = temp.left;
+            } else if (bookId == temp.bookId) {
+                return temp;
+            } else {
+                floor = temp;
+                temp = temp.right;
+            }
+        }
+        return floor;
+    }
+
+    // Returns the book with the smallest ID greater than or equal to bookId, or null if there is none.
+    public RedBlackNode ceilingBook(int bookId) {
+        RedBlackNode ceiling = null;
+        RedBlackNode temp = root;
+        while (temp != nil) {
+            if (bookId < temp.bookId) {
+                ceiling = temp;
+                temp = temp.left;
+            } else if (bookId == temp.bookId) {
+                return temp;
+            } else {
+                temp = temp.right;
+            }
+        }
+        return ceiling;
+    }
 
     public void borrowBook(int patronId, int bookId, int patronPriority) {
         RedBlackNode book = printBook(bookId);
@@ -427,22 +933,42 @@ class RedBlackTree {
         if (book.isAvailable) {
             book.borrowedBy = patronId;
             book.isAvailable = false;
-            resultString.append("Book " + bookId + " Borrowed by Patron " + patronId + "\n");
+            out.append("Book ").append(bookId).append(" Borrowed by Patron ").append(patronId).append('\n');
         } else if (alreadyReservedByPatron(patronId, book)) {
-            resultString.append("Book " + bookId + " Already Reserved by Patron " + patronId + "\n");
+            out.append("Book ").append(bookId).append(" Already Reserved by Patron ").append(patronId).append('\n');
         } else {
-            resultString.append("Book " + bookId + " Reserved by Patron " + patronId + "\n");
-            book.minHeap.insertNode(new ReservationNode(patronId, patronPriority, new Date()));
+            long sequence = nextReservationSequence();
+            out.append("Book ").append(bookId).append(" Reserved by Patron ").append(patronId).append('\n');
+            book.minHeap.insertNode(patronId, MinHeap.key(patronPriority, sequence));
+            if (LibraryMetrics.ENABLED) {
+                LibraryMetrics.recordReservation(book.minHeap.size());
+            }
         }
     }
 
-    public boolean alreadyReservedByPatron(int patronId, RedBlackNode book) {
-        for (ReservationNode reservation : book.minHeap.heap) {
-            if (reservation != null && reservation.getPatronId() == patronId) {
-                return true;
+    // Returns the next reservation sequence number; the low 32 bits of a reservation key hold it.
+    private long nextReservationSequence() {
+        long sequence = MinHeap.nextSequence(reservationSequence, this::reservationHeaps);
+        reservationSequence = sequence + 1;
+        return sequence;
+    }
+
+    // Returns the heaps of every book with reservations.
+    private List<MinHeap> reservationHeaps() {
+        List<MinHeap> heaps = new ArrayList<>();
+        BookRangeCursor cursor = rangeCursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        while (cursor.hasNext()) {
+            RedBlackNode book = cursor.next();
+            if (!book.minHeap.isEmpty()) {
+                heaps.add(book.minHeap);
             }
         }
-        return false;
+        return heaps;
+    }
+
+    // Checks through the heap's patron index whether the patron already has a reservation for the book.
+    public boolean alreadyReservedByPatron(int patronId, RedBlackNode book) {
+        return book.minHeap.contains(patronId);
     }
 
     public void returnBook(int patronId, int bookId) {
@@ -455,20 +981,225 @@ class RedBlackTree {
             return;
         book.borrowedBy = -1;
         book.isAvailable = true;
-        resultString.append("Book " + bookId + " Returned by Patron " + patronId + "\n");
+        out.append("Book ").append(bookId).append(" Returned by Patron ").append(patronId).append('\n');
         if (!book.minHeap.isEmpty()) {
-            ReservationNode latestReservation = book.minHeap.poll();
-            if (latestReservation.getPatronId() == -1)
-                return;
-            book.borrowedBy = latestReservation.getPatronId();
+            int nextPatronId = book.minHeap.pollPatronId();
+            book.borrowedBy = nextPatronId;
             book.isAvailable = false;
-            resultString.append("Book " + bookId + " Allotted to Patron " + latestReservation.getPatronId() + "\n");
+            out.append("Book ").append(bookId).append(" Allotted to Patron ").append(nextPatronId).append('\n');
+        }
+    }
+
+    // Cancels the patron's reservation of a book, leaving the other reservations in their order.
+    public void cancelReservation(int patronId, int bookId) {
+        RedBlackNode book = printBook(bookId);
+        if (book == null)
+            return;
+        if (book.minHeap.remove(patronId) == null) {
+            out.append("Book ").append(bookId).append(" Not Reserved by Patron ").append(patronId).append('\n');
+        } else {
+            out.append("Book ").append(bookId).append(" Reservation Cancelled by Patron ").append(patronId).append('\n');
+        }
+    }
+
+    // Changes the priority of the patron's reservation of a book.
+    public void updatePriority(int patronId, int bookId, int newPriority) {
+        RedBlackNode book = printBook(bookId);
+        if (book == null)
+            return;
+        if (book.minHeap.updatePriority(patronId, newPriority)) {
+            out.append("Book ").append(bookId).append(" Reservation Priority of Patron ").append(patronId)
+                    .append(" Updated to ").append(newPriority).append('\n');
+        } else {
+            out.append("Book ").append(bookId).append(" Not Reserved by Patron ").append(patronId).append('\n');
+        }
+    }
+
+    // Flags stored with the depth of a book in a snapshot; depths fit in the low six bits, since a
+    // Red-Black Tree of at most 2^31 books is less than 64 levels deep. ArrayRedBlackTree shares the format.
+    static final int DEPTH_MASK = 0x3F, RED = 0x40, AVAILABLE = 0x80;
+
+    /**
+     * Writes the counters and every book in ascending ID order with its depth and color. IDs are written as
+     * the difference from the previous ID, and the depths let `readSnapshot` rebuild exactly the same tree
+     * in linear time.
+     *
+     * @param out The snapshot being written.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void writeSnapshot(SnapshotWriter out) throws IOException {
+        out.putVarInt(bookCount);
+        out.putVarInt(flipCount);
+        out.putVarLong(reservationSequence);
+        writeSubtree(out, root, 0, Integer.MIN_VALUE - 1L);
+    }
+
+    // Writes a subtree in order and returns the ID of its last book, or previousId if it is empty.
+    private long writeSubtree(SnapshotWriter out, RedBlackNode book, int depth, long previousId) throws IOException {
+        if (book == nil) {
+            return previousId;
+        }
+        if (depth > DEPTH_MASK) {
+            throw new IllegalStateException("Tree too deep for a snapshot");
+        }
+        previousId = writeSubtree(out, book.left, depth + 1, previousId);
+        out.putVarLong(book.bookId - previousId);
+        out.putByte(depth | (book.color == NodeColor.RED ? RED : 0) | (book.isAvailable ? AVAILABLE : 0));
+        out.putString(book.bookName);
+        out.putString(book.authorName);
+        out.putSignedVarInt(book.borrowedBy);
+        book.minHeap.writeSnapshot(out);
+        return writeSubtree(out, book.right, depth + 1, book.bookId);
+    }
+
+    /**
+     * Rebuilds the tree written by `writeSnapshot`; the tree must be empty. The books arrive in ascending
+     * order, so the right spine of the part built so far is kept on a stack whose depths strictly increase.
+     * Each book takes the stacked books deeper than itself as its left subtree and becomes the right child of
+     * the book left on top. A popped book's right child is final, so the depths are checked as books are
+     * popped and once more for the stack left at the end.
+     *
+     * @param in The snapshot being read.
+     * @throws IOException If an I/O error occurs or the data does not describe a tree.
+     */
+    @Override
+    public void readSnapshot(SnapshotReader in) throws IOException {
+        if (root != nil) {
+            throw new IllegalStateException("A snapshot can only be read into an empty tree");
+        }
+        int count = in.getVarInt();
+        int flips = in.getVarInt();
+        long sequence = in.getVarLong();
+        titles.clear();
+        authors.clear();
+        RedBlackNode[] loaded = new RedBlackNode[Math.min(count, 1 << 16)];
+        RedBlackNode[] spine = new RedBlackNode[DEPTH_MASK + 1];
+        int[] depths = new int[DEPTH_MASK + 1];
+        int top = 0; // Number of books on the spine
+        long bookId = Integer.MIN_VALUE - 1L;
+        for (int i = 0; i < count; i++) {
+            bookId += in.getVarLong();
+            int flags = in.getByte();
+            int depth = flags & DEPTH_MASK;
+            if (bookId > Integer.MAX_VALUE || top > 0 && depths[top - 1] == depth) {
+                throw new IOException("Snapshot does not describe a search tree");
+            }
+            RedBlackNode book = new RedBlackNode((int) bookId, in.getString(), in.getString(),
+                    (flags & AVAILABLE) != 0);
+            book.color = (flags & RED) != 0 ? NodeColor.RED : NodeColor.BLACK;
+            book.borrowedBy = in.getSignedVarInt();
+            book.minHeap.readSnapshot(in);
+            if (i == loaded.length) {
+                loaded = Arrays.copyOf(loaded, loaded.length * 2);
+            }
+            loaded[i] = book;
+            RedBlackNode left = nil;
+            int leftDepth = depth + 1;
+            while (top > 0 && depths[top - 1] > depth) {
+                top--;
+                if (left != nil && depths[top] + 1 != leftDepth) {
+                    throw new IOException("Snapshot does not describe a search tree");
+                }
+                left = spine[top];
+                leftDepth = depths[top];
+            }
+            if (left != nil && leftDepth != depth + 1) {
+                throw new IOException("Snapshot does not describe a search tree");
+            }
+            book.left = left;
+            if (left != nil) {
+                left.parent = book;
+            }
+            book.right = nil;
+            book.parent = nil;
+            if (top > 0) {
+                book.parent = spine[top - 1];
+                book.parent.right = book;
+            }
+            spine[top] = book;
+            depths[top++] = depth;
+        }
+        for (int i = 0; i < top; i++) {
+            if (depths[i] != i) {
+                throw new IOException("Snapshot does not describe a search tree");
+            }
+        }
+        root = top > 0 ? spine[0] : nil;
+        titles.addAll(loaded, count);
+        authors.addAll(loaded, count);
+        computeSizes(root);
+        bookCount = count;
+        flipCount = flips;
+        reservationSequence = sequence;
+        finger = nil;
+        if (VERIFY_FLIPS) {
+            hm2.clear();
+            populateLatestMap();
+        }
+    }
+
+    // Sets the subtree size of every book below the given one and returns the size of its subtree.
+    private int computeSizes(RedBlackNode book) {
+        if (book == nil) {
+            return 0;
+        }
+        book.size = computeSizes(book.left) + computeSizes(book.right) + 1;
+        return book.size;
+    }
+
+    /**
+     * Checks the Red-Black Tree properties, the parent links, every book's reservation heap, and that the
+     * title and author indexes hold exactly the books of the tree.
+     *
+     * @throws IllegalStateException If any of them is violated.
+     */
+    void checkInvariants() {
+        if (root != nil && (root.color != NodeColor.BLACK || root.parent != nil)) {
+            throw new IllegalStateException("Root must be black and have no parent");
+        }
+        if (titles.size() != bookCount || authors.size() != bookCount) {
+            throw new IllegalStateException("Indexes hold " + titles.size() + " and " + authors.size()
+                    + " books instead of " + bookCount);
+        }
+        checkSubtree(root, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Checks the subtree whose keys must lie strictly between lower and upper; returns its black height.
+    private int checkSubtree(RedBlackNode book, long lower, long upper) {
+        if (book == nil) {
+            return 1;
+        }
+        if (book.bookId <= lower || book.bookId >= upper) {
+            throw new IllegalStateException("Book " + book.bookId + " is out of search order");
+        }
+        if (book.left != nil && book.left.parent != book || book.right != nil && book.right.parent != book) {
+            throw new IllegalStateException("Broken parent link below book " + book.bookId);
+        }
+        if (book.color == NodeColor.RED && (book.left.color == NodeColor.RED || book.right.color == NodeColor.RED)) {
+            throw new IllegalStateException("Red book " + book.bookId + " has a red child");
+        }
+        if (book.size != book.left.size + book.right.size + 1) {
+            throw new IllegalStateException("Wrong subtree size at book " + book.bookId);
+        }
+        if (!titles.contains(book) || !authors.contains(book)) {
+            throw new IllegalStateException("Book " + book.bookId + " is missing from an index");
+        }
+        book.minHeap.checkInvariants();
+        if (book.isAvailable && !book.minHeap.isEmpty()) {
+            throw new IllegalStateException("Available book " + book.bookId + " has reservations");
+        }
+        int leftHeight = checkSubtree(book.left, lower, book.bookId);
+        int rightHeight = checkSubtree(book.right, book.bookId, upper);
+        if (leftHeight != rightHeight) {
+            throw new IllegalStateException("Unequal black heights below book " + book.bookId);
         }
+        return leftHeight + (book.color == NodeColor.BLACK ? 1 : 0);
     }
 
+    // The books are kept after Quit, so a snapshot of the library can still be written.
     public void quit() {
-        resultString.append("Program Terminated!!\n");
-        this.root = null;
+        out.append("Program Terminated!!\n");
     }
 
 }
\ No newline at end of file
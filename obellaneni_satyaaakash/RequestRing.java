@@ -0,0 +1,152 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The `RequestRing` class is a bounded multi-producer, single-consumer ring of reusable request slots, in the
+ * style of the LMAX Disruptor. A producer claims the next sequence number with a CAS, waits until the consumer
+ * has freed the slot that number maps to, fills it and publishes it by writing the number into the slot's entry
+ * of an availability array. The consumer takes every contiguous published slot at once, runs the batch, and
+ * frees all its slots with one write. Waiting producers spin briefly and then park; the idle consumer parks
+ * until a producer publishes, so no side takes a lock.
+ */
+class RequestRing {
+    private static final int SPINS = 128;
+    private static final long PARK_NANOS = 20_000;
+    private static final long CLOSED = 1L << 62; // Set in the claim counter once no more claims are allowed
+
+    /**
+     * One request: the decoded arguments and the future receiving its result.
+     */
+    static final class Slot {
+        final Command command = new Command();
+        CompletableFuture<Object> result;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(); // Next sequence to claim, with the CLOSED bit
+    private final AtomicLongArray published;             // Sequence last published in each slot
+    private volatile long consumed;                      // Sequences below this are freed
+    private volatile Thread sleepingConsumer;            // Set while the consumer is parked
+
+    /**
+     * Creates a ring of request slots.
+     *
+     * @param capacity Number of slots; must be a power of two.
+     */
+    RequestRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        slots = new Slot[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            published.set(i, i - (long) capacity); // No sequence has been published in any slot yet.
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Claims the next sequence and waits until its slot is free.
+     *
+     * @return The claimed sequence, or -1 if the ring has been closed.
+     */
+    long claim() {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0) {
+                return -1;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int spins = 0;
+        while (sequence - consumed >= slots.length) {
+            spins = backOff(spins);
+        }
+        return sequence;
+    }
+
+    // Returns the slot of a claimed sequence, for the producer to fill.
+    Slot slot(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    // Makes a filled slot visible to the consumer and wakes the consumer if it sleeps.
+    void publish(long sequence) {
+        published.set((int) (sequence & mask), sequence);
+        Thread consumer = sleepingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // Refuses every later claim; the sequences already claimed are still published and taken.
+    void close() {
+        long sequence;
+        do {
+            sequence = claimed.get();
+        } while ((sequence & CLOSED) == 0 && !claimed.compareAndSet(sequence, sequence | CLOSED));
+        Thread consumer = sleepingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Waits for published slots and returns how many contiguous ones follow the last batch, at most max. The
+     * slots are sequences getConsumed() up to the returned count, and stay valid until release is called.
+     *
+     * @param max The largest batch to take.
+     * @return The batch size, or 0 once the ring is closed and every claimed sequence has been taken.
+     */
+    int take(int max) {
+        long next = consumed;
+        int spins = 0;
+        while (true) {
+            int count = 0;
+            while (count < max && published.get((int) ((next + count) & mask)) == next + count) {
+                count++;
+            }
+            if (count > 0) {
+                return count;
+            }
+            long state = claimed.get();
+            if ((state & CLOSED) != 0 && (state & ~CLOSED) == next) {
+                return 0;
+            }
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+                spins++;
+                continue;
+            }
+            // Check again after announcing the sleep, so a publish between the two checks is not missed.
+            sleepingConsumer = Thread.currentThread();
+            if (published.get((int) (next & mask)) != next && claimed.get() == state) {
+                LockSupport.park(this);
+            }
+            sleepingConsumer = null;
+        }
+    }
+
+    // Returns the first sequence of the current batch.
+    long getConsumed() {
+        return consumed;
+    }
+
+    // Frees the slots of the batch returned by take.
+    void release(int count) {
+        consumed = consumed + count;
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+            return spins + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return spins;
+    }
+}
@@ -1,17 +1,19 @@
-import java.util.Date;
-
 public class ReservationNode implements Comparable<ReservationNode> {
     // Store patron id
     private int patronId;
     // Store priority number
     private int priorityNumber;
-   //Store Reservation Time
-    private Date timeOfReservation;
+    // Store reservation sequence number, the order in which reservations were made in the library
+    private long sequence;
 // Constructor to create node with given parameters
-    public ReservationNode(int patronId, int priorityNumber, Date timeOfReservation) {
+    public ReservationNode(int patronId, int priorityNumber, long sequence) {
         this.patronId = patronId;
         this.priorityNumber = priorityNumber;
-        this.timeOfReservation = timeOfReservation;
+        this.sequence = sequence;
+    }
+// Constructor to create node from a packed MinHeap key
+    public ReservationNode(int patronId, long key) {
+        this(patronId, MinHeap.priorityOf(key), MinHeap.sequenceOf(key));
     }
 // Default constructor
     public ReservationNode() {
@@ -26,21 +28,22 @@ public class ReservationNode implements Comparable<ReservationNode> {
         return priorityNumber;
     }
 
-    public Date getTimeOfReservation() {
-        return timeOfReservation;
+    public long getSequence() {
+        return sequence;
+    }
+// Getter method for the packed key ordering this reservation in a MinHeap
+    public long getKey() {
+        return MinHeap.key(priorityNumber, sequence);
     }
 // Override toString method to print node in a readable format
     @Override
     public String toString() {
-        return "(" + patronId + ", " + priorityNumber + ", " + timeOfReservation + ")";
+        return "(" + patronId + ", " + priorityNumber + ", " + sequence + ")";
     }
-// Override compareTo method to compare nodes based on priority and reservation time
+// Override compareTo method to compare nodes based on priority and reservation order
     @Override
     public int compareTo(ReservationNode o) {
-        if (this.priorityNumber != o.priorityNumber)
-            return this.priorityNumber - o.priorityNumber;
-        else
-            return this.timeOfReservation.compareTo(o.timeOfReservation);
+        return Long.compare(getKey(), o.getKey());
     }
 
 }
@@ -0,0 +1,629 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * The `ShardedLibrary` class splits the book ID space into contiguous ranges, each held by its own
+ * `RedBlackTree` behind its own lock, so operations on books in different shards run in parallel.
+ * Single-book operations lock one shard. PrintBooks locks the shards overlapping its range in ascending
+ * order and writes their books in that order. FindClosestBook looks for the floor and ceiling in the
+ * target's shard and only widens to the next shard on a side where no candidate was found.
+ * Each shard writes into its own buffer, which is moved to the shared sink before the shard lock is
+ * released, so the output of one command is never interleaved with another's.
+ * When the books pile up in a few shards, the boundaries are moved to the quantiles of the current IDs and
+ * the misplaced books are migrated together with their loans and reservations.
+ * All results match a single tree except ColorFlipCount, which sums the flips of the shards' smaller trees.
+ */
+class ShardedLibrary implements LibraryEngine, Checkpointable {
+    // Number of inserts between two checks of the shard balance.
+    private static final int BALANCE_INTERVAL = 4096;
+
+    private final RedBlackTree[] shards;
+    private final StringBuilderSink[] buffers; // Output of the operation running on each shard
+    private final ReentrantLock[] shardLocks;
+    // Lowest ID held by each shard: shard i holds the IDs in [lowerBounds[i], lowerBounds[i + 1]).
+    private int[] lowerBounds;
+    // Held for reading by every operation and for writing while the boundaries move.
+    private final StampedLock layoutLock = new StampedLock();
+    private final AtomicInteger insertsSinceBalance = new AtomicInteger();
+    private int rebalances; // Number of times the boundaries moved; guarded by layoutLock
+    private final OutputSink out;
+
+    /**
+     * Creates an empty library split into the given number of shards.
+     *
+     * @param out        The sink receiving the results of every operation.
+     * @param shardCount The number of shards.
+     */
+    public ShardedLibrary(OutputSink out, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.out = out;
+        this.shards = new RedBlackTree[shardCount];
+        this.buffers = new StringBuilderSink[shardCount];
+        this.shardLocks = new ReentrantLock[shardCount];
+        this.lowerBounds = new int[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            buffers[i] = new StringBuilderSink();
+            shards[i] = new RedBlackTree(buffers[i]);
+            shardLocks[i] = new ReentrantLock();
+            // The non-negative IDs are split evenly until the first rebalance sees the real distribution.
+            lowerBounds[i] = i == 0 ? Integer.MIN_VALUE : (int) ((long) Integer.MAX_VALUE * i / shardCount);
+        }
+    }
+
+    // Returns the shard whose range holds the given ID.
+    private int shardOf(int bookId) {
+        int index = Arrays.binarySearch(lowerBounds, bookId);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    // Runs an operation on the shard holding bookId and publishes its output.
+    private void onShard(int bookId, Consumer<RedBlackTree> operation) {
+        long stamp = layoutLock.readLock();
+        try {
+            int shard = shardOf(bookId);
+            shardLocks[shard].lock();
+            try {
+                operation.accept(shards[shard]);
+                publish(shard);
+            } finally {
+                shardLocks[shard].unlock();
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    // Moves a shard's buffered output to the shared sink.
+    private void publish(int shard) {
+        synchronized (out) {
+            buffers[shard].drainTo(out);
+        }
+    }
+
+    // Locks the shards first..last in ascending order, the order every multi-shard operation uses.
+    private void lockShards(int first, int last) {
+        for (int i = first; i <= last; i++) {
+            shardLocks[i].lock();
+        }
+    }
+
+    private void unlockShards(int first, int last) {
+        for (int i = last; i >= first; i--) {
+            shardLocks[i].unlock();
+        }
+    }
+
+    @Override
+    public OutputSink getOutput() {
+        return out;
+    }
+
+    @Override
+    public void insertBook(int bookId, String bookName, String authorName, boolean isAvailable) {
+        onShard(bookId, shard -> shard.insertBook(bookId, bookName, authorName, isAvailable));
+        if (insertsSinceBalance.incrementAndGet() >= BALANCE_INTERVAL) {
+            rebalanceIfSkewed();
+        }
+    }
+
+    // Loads the run of the sorted batch that falls in each shard with that shard's single-pass bulk load.
+    @Override
+    public void bulkLoad(BookBatch books) {
+        long stamp = layoutLock.readLock();
+        try {
+            int from = 0;
+            while (from < books.size) {
+                int shard = shardOf(books.bookIds[from]);
+                int to = from + 1;
+                while (to < books.size && shardOf(books.bookIds[to]) == shard) {
+                    to++;
+                }
+                shardLocks[shard].lock();
+                try {
+                    shards[shard].bulkLoad(books, from, to);
+                } finally {
+                    shardLocks[shard].unlock();
+                }
+                from = to;
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+        if (insertsSinceBalance.addAndGet(books.size) >= BALANCE_INTERVAL) {
+            rebalanceIfSkewed();
+        }
+    }
+
+    @Override
+    public void writeBook(int bookId) {
+        onShard(bookId, shard -> shard.writeBook(bookId));
+    }
+
+    @Override
+    public void printBooks(int bookId1, int bookId2) {
+        long stamp = layoutLock.readLock();
+        try {
+            int first = shardOf(bookId1);
+            int last = shardOf(bookId2);
+            if (first > last) {
+                return;
+            }
+            lockShards(first, last);
+            try {
+                for (int i = first; i <= last; i++) {
+                    shards[i].printBooks(bookId1, bookId2);
+                    publish(i);
+                }
+            } finally {
+                unlockShards(first, last);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    // Counts each shard's part of the range by rank to find the shard where the page starts.
+    @Override
+    public void printBooks(int bookId1, int bookId2, int offset, int limit) {
+        long stamp = layoutLock.readLock();
+        try {
+            int first = shardOf(bookId1);
+            int last = shardOf(bookId2);
+            if (first > last) {
+                return;
+            }
+            lockShards(first, last);
+            try {
+                int skip = Math.max(offset, 0);
+                int left = limit;
+                for (int i = first; i <= last && left > 0; i++) {
+                    int count = shards[i].count(bookId1, bookId2);
+                    if (skip >= count) {
+                        skip -= count;
+                        continue;
+                    }
+                    shards[i].printBooks(bookId1, bookId2, skip, left);
+                    publish(i);
+                    left -= Math.min(count - skip, left);
+                    skip = 0;
+                }
+            } finally {
+                unlockShards(first, last);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void countBooks(int bookId1, int bookId2) {
+        int count = count(bookId1, bookId2);
+        synchronized (out) {
+            out.append("Book Count : ").append(count).append('\n');
+        }
+    }
+
+    /**
+     * Counts the books whose IDs lie in the given inclusive range, over every shard the range covers.
+     *
+     * @param bookId1 The lower end of the range.
+     * @param bookId2 The upper end of the range.
+     * @return The number of books in the range.
+     */
+    int count(int bookId1, int bookId2) {
+        long stamp = layoutLock.readLock();
+        try {
+            int first = shardOf(bookId1);
+            int last = shardOf(bookId2);
+            int count = 0;
+            if (first <= last) {
+                lockShards(first, last);
+                try {
+                    for (int i = first; i <= last; i++) {
+                        count += shards[i].count(bookId1, bookId2);
+                    }
+                } finally {
+                    unlockShards(first, last);
+                }
+            }
+            return count;
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    // Each shard writes its books by the author; the shards hold ascending ID ranges, so the books stay in ID order.
+    @Override
+    public void printBooksByAuthor(String author) {
+        long stamp = layoutLock.readLock();
+        try {
+            lockShards(0, shards.length - 1);
+            try {
+                for (int i = 0; i < shards.length; i++) {
+                    shards[i].printBooksByAuthor(author);
+                    publish(i);
+                }
+            } finally {
+                unlockShards(0, shards.length - 1);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    // Merges the matches of the shards' title indexes, which are each in title order.
+    @Override
+    public void searchTitle(String prefix) {
+        long stamp = layoutLock.readLock();
+        try {
+            lockShards(0, shards.length - 1);
+            try {
+                List<RedBlackNode> matches = new ArrayList<>();
+                for (RedBlackTree shard : shards) {
+                    matches.addAll(shard.booksWithTitlePrefix(prefix));
+                }
+                matches.sort(BookIndex.BY_TITLE);
+                synchronized (out) {
+                    for (RedBlackNode book : matches) {
+                        book.writeTo(out);
+                    }
+                }
+            } finally {
+                unlockShards(0, shards.length - 1);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void borrowBook(int patronId, int bookId, int patronPriority) {
+        onShard(bookId, shard -> shard.borrowBook(patronId, bookId, patronPriority));
+    }
+
+    @Override
+    public void returnBook(int patronId, int bookId) {
+        onShard(bookId, shard -> shard.returnBook(patronId, bookId));
+    }
+
+    @Override
+    public void deleteBook(int bookId) {
+        onShard(bookId, shard -> shard.deleteBook(bookId));
+    }
+
+    @Override
+    public void findClosestBook(int targetId) {
+        long stamp = layoutLock.readLock();
+        try {
+            int home = shardOf(targetId);
+            int first = home;
+            int last = home;
+            while (true) {
+                RedBlackNode floor = null;
+                RedBlackNode ceiling = null;
+                lockShards(first, last);
+                try {
+                    for (int i = home; i >= first && floor == null; i--) {
+                        floor = shards[i].floorBook(targetId);
+                    }
+                    for (int i = home; i <= last && ceiling == null; i++) {
+                        ceiling = shards[i].ceilingBook(targetId);
+                    }
+                    boolean widenDown = floor == null && first > 0;
+                    boolean widenUp = ceiling == null && last < shards.length - 1;
+                    if (!widenDown && !widenUp) {
+                        writeClosest(targetId, floor, ceiling);
+                        return;
+                    }
+                } finally {
+                    unlockShards(first, last);
+                }
+                // A side without a candidate only had empty shards so far; retry with the next shard locked too.
+                if (floor == null && first > 0) {
+                    first--;
+                }
+                if (ceiling == null && last < shards.length - 1) {
+                    last++;
+                }
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    // Writes the closer of floor and ceiling, or both in ID order on a tie, as a single tree would.
+    private void writeClosest(int targetId, RedBlackNode floor, RedBlackNode ceiling) {
+        synchronized (out) {
+            if (floor == null && ceiling == null)
+                return;
+            if (floor == ceiling || ceiling == null) {
+                floor.writeTo(out);
+            } else if (floor == null) {
+                ceiling.writeTo(out);
+            } else {
+                long floorDiff = (long) targetId - floor.bookId;
+                long ceilingDiff = (long) ceiling.bookId - targetId;
+                if (floorDiff <= ceilingDiff)
+                    floor.writeTo(out);
+                if (ceilingDiff <= floorDiff)
+                    ceiling.writeTo(out);
+            }
+        }
+    }
+
+    @Override
+    public void getColorFlipCount() {
+        long stamp = layoutLock.readLock();
+        try {
+            lockShards(0, shards.length - 1);
+            try {
+                int flips = 0;
+                for (RedBlackTree shard : shards) {
+                    flips += shard.flipCount;
+                }
+                synchronized (out) {
+                    out.append("Color Flip Count : ").append(flips).append('\n');
+                }
+            } finally {
+                unlockShards(0, shards.length - 1);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    // Writes the number of books in all shards and the height of the tallest shard tree.
+    @Override
+    public void stats() {
+        long[] gauges = measure();
+        synchronized (out) {
+            LibraryMetrics.writeTo(out, gauges[0], (int) gauges[1]);
+        }
+    }
+
+    @Override
+    public void publishGauges() {
+        long[] gauges = measure();
+        LibraryMetrics.publishGauges(gauges[0], (int) gauges[1]);
+    }
+
+    // Returns the number of books in all shards and the height of the tallest shard tree.
+    private long[] measure() {
+        long stamp = layoutLock.readLock();
+        try {
+            lockShards(0, shards.length - 1);
+            try {
+                long books = 0;
+                int height = 0;
+                for (RedBlackTree shard : shards) {
+                    books += shard.size();
+                    height = Math.max(height, shard.height(shard.getRoot()));
+                }
+                return new long[] {books, height};
+            } finally {
+                unlockShards(0, shards.length - 1);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void cancelReservation(int patronId, int bookId) {
+        onShard(bookId, shard -> shard.cancelReservation(patronId, bookId));
+    }
+
+    @Override
+    public void updatePriority(int patronId, int bookId, int newPriority) {
+        onShard(bookId, shard -> shard.updatePriority(patronId, bookId, newPriority));
+    }
+
+    @Override
+    public void quit() {
+        synchronized (out) {
+            out.append("Program Terminated!!\n");
+        }
+    }
+
+    // Writes the statistics of every shard, prefixed with its number.
+    @Override
+    public void printStats(PrintStream err) {
+        long stamp = layoutLock.readLock();
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                shardLocks[i].lock();
+                try {
+                    err.print("Shard " + i + ": ");
+                    shards[i].printStats(err);
+                } finally {
+                    shardLocks[i].unlock();
+                }
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Writes the number of shards and their boundaries, followed by the snapshot of every shard's tree.
+     *
+     * @param out The snapshot being written.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void writeSnapshot(SnapshotWriter out) throws IOException {
+        long stamp = layoutLock.readLock();
+        try {
+            lockShards(0, shards.length - 1);
+            try {
+                out.putVarInt(shards.length);
+                for (int bound : lowerBounds) {
+                    out.putSignedVarInt(bound);
+                }
+                for (RedBlackTree shard : shards) {
+                    shard.writeSnapshot(out);
+                }
+            } finally {
+                unlockShards(0, shards.length - 1);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Restores the shards written by `writeSnapshot`; the library must be empty. With the same number of
+     * shards every tree is read back as it was. Otherwise each saved shard is read into a scratch tree and its
+     * books are migrated to the shards of this layout, keeping their loans and reservations, and the color
+     * flips of the saved shards are carried over in the first shard.
+     *
+     * @param in The snapshot being read.
+     * @throws IOException If an I/O error occurs or the data is malformed.
+     */
+    @Override
+    public void readSnapshot(SnapshotReader in) throws IOException {
+        long stamp = layoutLock.writeLock();
+        try {
+            for (RedBlackTree shard : shards) {
+                if (shard.size() > 0) {
+                    throw new IllegalStateException("A snapshot can only be read into an empty library");
+                }
+            }
+            int savedShards = in.getVarInt();
+            int[] bounds = new int[savedShards];
+            for (int i = 0; i < savedShards; i++) {
+                bounds[i] = in.getSignedVarInt();
+                if (i == 0 ? bounds[i] != Integer.MIN_VALUE : bounds[i] <= bounds[i - 1]) {
+                    throw new IOException("Snapshot holds invalid shard boundaries");
+                }
+            }
+            if (savedShards == shards.length) {
+                lowerBounds = bounds;
+        rebalances++;
+                for (RedBlackTree shard : shards) {
+                    shard.readSnapshot(in);
+                }
+                return;
+            }
+            for (int i = 0; i < savedShards; i++) {
+                RedBlackTree saved = new RedBlackTree(new NullSink());
+                saved.readSnapshot(in);
+                shards[0].flipCount += saved.flipCount;
+                RedBlackNode book;
+                while ((book = saved.ceilingBook(Integer.MIN_VALUE)) != null) {
+                    migrate(saved, book.bookId);
+                }
+            }
+        } finally {
+            layoutLock.unlockWrite(stamp);
+        }
+        rebalanceIfSkewed();
+    }
+
+    // Moves the shard boundaries to the quantiles of the current IDs if one shard holds over twice its share.
+    private void rebalanceIfSkewed() {
+        long stamp = layoutLock.writeLock();
+        try {
+            insertsSinceBalance.set(0);
+            int total = 0;
+            int largest = 0;
+            for (RedBlackTree shard : shards) {
+                total += shard.size();
+                largest = Math.max(largest, shard.size());
+            }
+            if (total >= 2 * shards.length && largest > 2 * (total / shards.length)) {
+                rebalance(total);
+            }
+        } finally {
+            layoutLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gives every shard an equal share of the current books. The caller holds the layout write lock, so no
+     * other operation is running.
+     *
+     * @param total The number of books in the library; at least twice the number of shards.
+     */
+    private void rebalance(int total) {
+        // The book of rank total * k / shardCount becomes the lowest ID of shard k.
+        int[] bounds = new int[shards.length];
+        bounds[0] = Integer.MIN_VALUE;
+        int next = 1;
+        long rank = 0;
+        for (int i = 0; i < shards.length && next < shards.length; i++) {
+            BookRangeCursor cursor = shards[i].rangeCursor(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            while (cursor.hasNext() && next < shards.length) {
+                RedBlackNode book = cursor.next();
+                if (rank == (long) total * next / shards.length) {
+                    bounds[next++] = book.bookId;
+                }
+                rank++;
+            }
+        }
+        lowerBounds = bounds;
+        rebalances++;
+
+        // Misplaced books sit at either end of a shard; detach them from there until both ends fit.
+        for (int i = 0; i < shards.length; i++) {
+            RedBlackTree shard = shards[i];
+            RedBlackNode book;
+            while ((book = shard.ceilingBook(Integer.MIN_VALUE)) != null && shardOf(book.bookId) != i) {
+                migrate(shard, book.bookId);
+            }
+            while ((book = shard.floorBook(Integer.MAX_VALUE)) != null && shardOf(book.bookId) != i) {
+                migrate(shard, book.bookId);
+            }
+        }
+    }
+
+    // Returns the number of times the shard boundaries have moved.
+    int rebalanceCount() {
+        long stamp = layoutLock.readLock();
+        try {
+            return rebalances;
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+
+    private void migrate(RedBlackTree from, int bookId) {
+        RedBlackNode book = from.detachBook(bookId);
+        shards[shardOf(bookId)].attachBook(book, from);
+    }
+
+    /**
+     * Checks every shard's tree and that each shard only holds IDs inside its range.
+     *
+     * @throws IllegalStateException If any invariant is violated.
+     */
+    void checkInvariants() {
+        long stamp = layoutLock.readLock();
+        try {
+            lockShards(0, shards.length - 1);
+            try {
+                for (int i = 0; i < shards.length; i++) {
+                    shards[i].checkInvariants();
+                    RedBlackNode lowest = shards[i].ceilingBook(Integer.MIN_VALUE);
+                    RedBlackNode highest = shards[i].floorBook(Integer.MAX_VALUE);
+                    if (lowest != null && (shardOf(lowest.bookId) != i || shardOf(highest.bookId) != i)) {
+                        throw new IllegalStateException("Shard " + i + " holds IDs outside its range");
+                    }
+                }
+            } finally {
+                unlockShards(0, shards.length - 1);
+            }
+        } finally {
+            layoutLock.unlockRead(stamp);
+        }
+    }
+}
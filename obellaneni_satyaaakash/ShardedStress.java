@@ -0,0 +1,132 @@
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The `ShardedStress` class exercises a `ShardedLibrary` with several writer threads. In every round each writer
+ * works on its own slice of IDs and all writers share one more slice, and the window holding the slices moves up
+ * from round to round, so the books keep piling onto the last shard and the boundaries are moved many times while
+ * the writers run. Each writer keeps a model of its own slice, which must match the library's counts at the end,
+ * and the slices of the earlier rounds must be empty; every shard's tree and bounds are checked after each round.
+ * Usage: java ShardedStress [writers] [shards] [rounds]
+ */
+public class ShardedStress {
+    // IDs in each writer's slice, and in the slice shared by all writers.
+    private static final int SLICE = 8192;
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int shardCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        ShardedLibrary library = new ShardedLibrary(new NullSink(), shardCount);
+        CyclicBarrier barrier = new CyclicBarrier(writers, library::checkInvariants);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        BitSet[] models = new BitSet[writers];
+        Thread[] threads = new Thread[writers];
+        long start = System.nanoTime();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            models[w] = new BitSet(SLICE);
+            threads[w] = new Thread(() -> {
+                try {
+                    write(library, writer, writers, rounds, models[writer], barrier);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    barrier.reset();
+                }
+            });
+            threads[w].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Writer failed", failure.get());
+        }
+
+        library.checkInvariants();
+        int window = (writers + 1) * SLICE;
+        for (int w = 0; w < writers; w++) {
+            // Only the last round's slice may still hold books; the earlier ones were emptied by their writer.
+            int last = (rounds - 1) * window + w * SLICE;
+            int expected = models[w].cardinality();
+            if (library.count(last, last + SLICE - 1) != expected || earlierSlices(library, w, rounds, window) != 0) {
+                throw new IllegalStateException("Writer " + w + " expected " + expected + " books in its slice");
+            }
+        }
+        // With fewer than three shards, one only holds over twice its share while the others are empty.
+        int rebalances = library.rebalanceCount();
+        if (shardCount > 2 && rebalances < 2) {
+            throw new IllegalStateException("Only " + rebalances + " rebalances; the boundaries barely moved");
+        }
+        System.out.printf("writers=%d shards=%d rounds=%d rebalances=%d books=%d ms=%d invariants=ok%n", writers,
+                shardCount, rounds, rebalances, library.count(0, Integer.MAX_VALUE),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Writer: random operations on its own slice, mirrored in the model, and on the shared slice of each round.
+    private static void write(ShardedLibrary library, int writer, int writers, int rounds, BitSet model,
+                              CyclicBarrier barrier) throws InterruptedException, BrokenBarrierException {
+        Random random = new Random(writer);
+        int window = (writers + 1) * SLICE;
+        for (int round = 0; round < rounds; round++) {
+            int own = round * window + writer * SLICE;
+            int shared = round * window + writers * SLICE;
+            // Empty the previous round's slices, so the lower shards shrink while the upper ones grow.
+            if (round > 0) {
+                int previous = own - window;
+                for (int i = model.nextSetBit(0); i >= 0; i = model.nextSetBit(i + 1)) {
+                    library.deleteBook(previous + i);
+                }
+                model.clear();
+                if (writer == 0) {
+                    for (int id = shared - window; id < shared - window + SLICE; id++) {
+                        library.deleteBook(id);
+                    }
+                }
+            }
+            for (int op = 0; op < 2 * SLICE; op++) {
+                int offset = random.nextInt(SLICE);
+                int patron = random.nextInt(50);
+                switch (random.nextInt(8)) {
+                    case 0:
+                    case 1:
+                    case 2:
+                        library.insertBook(own + offset, "Title " + offset, "Author " + writer, true);
+                        model.set(offset);
+                        break;
+                    case 3:
+                        library.deleteBook(own + offset);
+                        model.clear(offset);
+                        break;
+                    case 4:
+                        library.insertBook(shared + offset, "Shared " + offset, "Author " + writer, true);
+                        break;
+                    case 5:
+                        library.deleteBook(shared + offset);
+                        break;
+                    case 6:
+                        library.borrowBook(patron, shared + offset, random.nextInt(5));
+                        break;
+                    default:
+                        library.returnBook(patron, shared + offset);
+                        break;
+                }
+            }
+            barrier.await();
+        }
+    }
+
+    // Counts the books left in the writer's slices of the earlier rounds.
+    private static int earlierSlices(ShardedLibrary library, int writer, int rounds, int window) {
+        int count = 0;
+        for (int round = 0; round < rounds - 1; round++) {
+            int own = round * window + writer * SLICE;
+            count += library.count(own, own + SLICE - 1);
+        }
+        return count;
+    }
+}
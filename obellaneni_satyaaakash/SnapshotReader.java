@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The `SnapshotReader` class loads a snapshot written by `SnapshotWriter` through memory mappings of the file,
+ * so the body is decoded straight from the page cache without copying it through read buffers. Before the
+ * engine reads anything, the header is checked for the magic number, a known format version, its own CRC32
+ * and the file length, and the whole body is checked against the body CRC32. Bodies larger than one mapping
+ * are read through consecutive windows of the file.
+ */
+class SnapshotReader {
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long bodyLength;
+    private MappedByteBuffer window;
+    private long windowOffset; // Body offset of the first byte of the window
+    private byte[] scratch = new byte[256];
+
+    private SnapshotReader(FileChannel channel, long bodyLength) {
+        this.channel = channel;
+        this.bodyLength = bodyLength;
+    }
+
+    /**
+     * Restores an engine from a snapshot.
+     *
+     * @param path   The snapshot file.
+     * @param engine The empty engine to restore.
+     * @return The log sequence number stored in the snapshot.
+     * @throws IOException If the file cannot be read, is not a snapshot of a known version, or is corrupt.
+     */
+    static long load(Path path, Checkpointable engine) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SnapshotWriter.HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Snapshot " + path + " is truncated");
+                }
+            }
+            header.flip();
+            if (header.getInt() != SnapshotWriter.MAGIC) {
+                throw new IOException("Not a library snapshot: " + path);
+            }
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, SnapshotWriter.HEADER_SIZE - 4);
+            if (header.getInt(SnapshotWriter.HEADER_SIZE - 4) != (int) headerCrc.getValue()) {
+                throw new IOException("Snapshot " + path + " has a corrupt header");
+            }
+            int version = header.getInt();
+            if (version != SnapshotWriter.VERSION) {
+                throw new IOException("Snapshot " + path + " has unsupported format version " + version);
+            }
+            long logSequence = header.getLong();
+            long bodyLength = header.getLong();
+            int bodyCrc = header.getInt();
+            if (bodyLength != channel.size() - SnapshotWriter.HEADER_SIZE) {
+                throw new IOException("Snapshot " + path + " is truncated");
+            }
+            SnapshotReader in = new SnapshotReader(channel, bodyLength);
+            if (in.checksum() != bodyCrc) {
+                throw new IOException("Snapshot " + path + " is corrupt");
+            }
+            in.map(0);
+            try {
+                engine.readSnapshot(in);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Snapshot " + path + " ends inside a record", e);
+            }
+            if (in.windowOffset + in.window.position() != bodyLength) {
+                throw new IOException("Snapshot " + path + " has data after its last record");
+            }
+            return logSequence;
+        }
+    }
+
+    // Computes the CRC32 of the body one window at a time.
+    private int checksum() throws IOException {
+        CRC32 crc = new CRC32();
+        for (long offset = 0; offset < bodyLength; offset += WINDOW_SIZE) {
+            map(offset);
+            crc.update(window);
+        }
+        return (int) crc.getValue();
+    }
+
+    private void map(long offset) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, SnapshotWriter.HEADER_SIZE + offset,
+                Math.min(WINDOW_SIZE, bodyLength - offset));
+        windowOffset = offset;
+    }
+
+    // Moves the window forward when fewer than the given number of bytes are left in it. Near the end of the
+    // body fewer bytes may remain, and reading past them underflows.
+    private void need(int bytes) throws IOException {
+        if (window.remaining() < bytes && windowOffset + window.limit() < bodyLength) {
+            map(windowOffset + window.position());
+        }
+    }
+
+    public int getByte() throws IOException {
+        need(1);
+        return window.get() & 0xFF;
+    }
+
+    public int getVarInt() throws IOException {
+        long value = getVarLong();
+        if (value >>> 32 != 0) {
+            throw new IOException("Snapshot integer out of range");
+        }
+        return (int) value;
+    }
+
+    public int getSignedVarInt() throws IOException {
+        int value = getVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long getVarLong() throws IOException {
+        need(10);
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = window.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Snapshot integer too long");
+    }
+
+    public String getString() throws IOException {
+        int length = getVarInt();
+        if (length > scratch.length) {
+            if (length > bodyLength) {
+                throw new IOException("Snapshot string longer than the snapshot");
+            }
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        need(length);
+        window.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The `SnapshotWriter` class writes a library snapshot, a versioned binary image of a storage engine that
+ * `SnapshotReader` maps back into memory. A snapshot is a fixed header
+ * [magic][format version][log sequence number][body length][body CRC32][header CRC32] followed by the body,
+ * which the engine writes with the compact variable-length encodings of this class. The snapshot is written
+ * to a temporary file, the header last, and only renamed over the target once it has been forced to disk,
+ * so the target always holds either the previous snapshot or the complete new one.
+ */
+class SnapshotWriter {
+    static final int MAGIC = 0x474C534E;  // "GLSN"
+    static final int VERSION = 1;         // Format version; readers reject versions they do not know
+    static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;     // Bytes used in the buffer
+    private long bodyLength;  // Body bytes already written to the channel
+
+    private SnapshotWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a snapshot of the engine, replacing the file at the target path.
+     *
+     * @param target      The snapshot file.
+     * @param logSequence The sequence number of the first write-ahead log record the snapshot does not
+     *                    contain, or 0 for a snapshot taken without a log.
+     * @param engine      The engine to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void write(Path target, long logSequence, Checkpointable engine) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SnapshotWriter out = new SnapshotWriter(channel.position(HEADER_SIZE));
+            engine.writeSnapshot(out);
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(logSequence).putLong(out.bodyLength)
+                    .putInt((int) out.crc.getValue());
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, HEADER_SIZE - 4);
+            header.putInt((int) headerCrc.getValue()).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void putByte(int value) throws IOException {
+        ensure(1);
+        buffer[position++] = (byte) value;
+    }
+
+    // Writes a non-negative int in 1 to 5 bytes, seven bits at a time.
+    public void putVarInt(int value) throws IOException {
+        putVarLong(value & 0xFFFFFFFFL);
+    }
+
+    // Writes an int that may be negative, zigzag encoded so small magnitudes stay short.
+    public void putSignedVarInt(int value) throws IOException {
+        putVarInt((value << 1) ^ (value >> 31));
+    }
+
+    // Writes a non-negative long in 1 to 10 bytes, seven bits at a time.
+    public void putVarLong(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    // Writes a string as its UTF-8 length and bytes.
+    public void putString(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length);
+        if (bytes.length > BUFFER_SIZE - position) {
+            flush();
+            if (bytes.length > BUFFER_SIZE) {
+                crc.update(bytes);
+                writeFully(ByteBuffer.wrap(bytes));
+                bodyLength += bytes.length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (BUFFER_SIZE - position < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        crc.update(buffer, 0, position);
+        writeFully(ByteBuffer.wrap(buffer, 0, position));
+        bodyLength += position;
+        position = 0;
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
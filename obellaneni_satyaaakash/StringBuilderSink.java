@@ -0,0 +1,61 @@
+/**
+ * The `StringBuilderSink` class is an `OutputSink` that keeps all output in memory.
+ * It is meant for small workloads and for callers that want the output as a string.
+ */
+public class StringBuilderSink implements OutputSink {
+    private final StringBuilder builder = new StringBuilder();
+
+    @Override
+    public OutputSink append(String text) {
+        builder.append(text);
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        builder.append(value);
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        builder.append(c);
+        return this;
+    }
+
+    @Override
+    public void endCommand() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Moves everything appended so far to another sink and empties this one.
+     *
+     * @param target The sink receiving the output.
+     */
+    public void drainTo(OutputSink target) {
+        if (builder.length() > 0) {
+            target.append(builder.toString());
+            builder.setLength(0);
+        }
+    }
+
+    // Returns everything appended so far and empties this sink.
+    public String take() {
+        String text = builder.toString();
+        builder.setLength(0);
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
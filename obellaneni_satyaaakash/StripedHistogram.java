@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The `StripedHistogram` class counts non-negative values from any number of threads in a fixed set of
+ * log-linear buckets, each a `LongAdder`, so recording takes no lock and allocates nothing once the adders have
+ * spread over the contending threads. Values below 8 are counted exactly, and each larger power of two is split
+ * into 4 buckets, so a reported percentile is at most about 25% above the true value.
+ */
+public class StripedHistogram {
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final LongAdder[] counts = new LongAdder[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public StripedHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param value The value; negative values count as 0.
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts[bucketOf(v)].increment();
+        total.add(v);
+        max.accumulate(v);
+    }
+
+    // Returns the number of values recorded; values recorded meanwhile may or may not be included.
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given fraction of the values.
+     *
+     * @param fraction The fraction, such as 0.99 for the 99th percentile.
+     * @return The percentile, or 0 if nothing was recorded.
+     */
+    public long percentile(double fraction) {
+        long[] snapshot = new long[counts.length];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : counts) {
+            bucket.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * The `SyncPolicy` class decides when a `WriteAheadLog` forces its records to stable storage.
+ * Records are always written when the log buffer is full, at checkpoints and when the log is closed; a policy
+ * can additionally write and force them after every record or after a number of records (group commit).
+ */
+public class SyncPolicy {
+
+    /**
+     * The condition that triggers a force.
+     */
+    public enum Mode {
+        ALWAYS, COMMANDS, NONE
+    }
+
+    private final Mode mode;
+    private final int threshold; // Records between forces, used by COMMANDS only
+
+    private SyncPolicy(Mode mode, int threshold) {
+        if (mode == Mode.COMMANDS && threshold <= 0) {
+            throw new IllegalArgumentException("Sync threshold must be positive: " + threshold);
+        }
+        this.mode = mode;
+        this.threshold = threshold;
+    }
+
+    // Forces every record before the command it logs is applied.
+    public static SyncPolicy always() {
+        return new SyncPolicy(Mode.ALWAYS, 1);
+    }
+
+    // Forces the records of every given number of commands together.
+    public static SyncPolicy commands(int commands) {
+        return new SyncPolicy(Mode.COMMANDS, commands);
+    }
+
+    // Never forces; records reach the file when the buffer is full and the operating system decides when
+    // they reach the disk.
+    public static SyncPolicy none() {
+        return new SyncPolicy(Mode.NONE, 0);
+    }
+
+    /**
+     * Parses a policy written as "always", "commands:N" or "none".
+     *
+     * @param spec The policy specification.
+     * @return The parsed policy.
+     */
+    public static SyncPolicy parse(String spec) {
+        if (spec.equals("always")) {
+            return always();
+        } else if (spec.equals("none")) {
+            return none();
+        } else if (spec.startsWith("commands:")) {
+            return commands(Integer.parseInt(spec.substring("commands:".length())));
+        }
+        throw new IllegalArgumentException("Invalid sync policy: " + spec);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The `WorkloadGenerator` class writes synthetic gatorLibrary command files of any size for `WorkloadReplay`.
+ * The catalog is first filled with a BulkLoad() block; the commands after it are drawn from a weighted
+ * operation mix over book IDs from a `KeyDistribution`. The generator keeps a model of who holds and who
+ * reserves each book, the same way `RedBlackTree` does, so ReturnBook names the actual borrower and the
+ * waitlists reach the configured depth.
+ * Usage: java [-Dworkload.OPTION=VALUE ...] WorkloadGenerator outputFile, with the options
+ * commands (default 1000000), books (ID range, 100000), preload (books loaded first, books / 2),
+ * keys (uniform | zipf:EXPONENT | sequential:RUN_LENGTH, default uniform), mix (see DEFAULT_MIX),
+ * depth (patrons are drawn from depth + 1 IDs, which bounds the waitlist of a book, 8), priorities (priorities
+ * are drawn from 1 to this, 20), range (width of the PrintBooks ranges, 100) and seed (5536).
+ */
+public class WorkloadGenerator {
+    static final String DEFAULT_MIX = "InsertBook:5,DeleteBook:5,PrintBook:15,PrintBooks:3,BorrowBook:30,"
+            + "ReturnBook:25,FindClosestBook:10,ColorFlipCount:1,CancelReservation:3,UpdatePriority:3";
+
+    private static final String[] NAMES = {"InsertBook", "DeleteBook", "PrintBook", "PrintBooks", "BorrowBook",
+            "ReturnBook", "FindClosestBook", "ColorFlipCount", "CancelReservation", "UpdatePriority"};
+    private static final int INSERT = 0, DELETE = 1, PRINT = 2, PRINT_RANGE = 3, BORROW = 4, RETURN = 5,
+            CLOSEST = 6, FLIPS = 7, CANCEL = 8, UPDATE = 9;
+
+    private final Random random;
+    private final KeyDistribution keys;
+    private final int[] cumulativeWeights = new int[NAMES.length];
+    private final int books;
+    private final int patrons;
+    private final int priorities;
+    private final int range;
+
+    // Model of the library: 0 for an absent book, -1 for an available one, else the borrowing patron.
+    private final int[] borrowers;
+    private final Map<Integer, MinHeap> waitlists = new HashMap<>();
+    private long reservationSequence;
+
+    WorkloadGenerator(KeyDistribution keys, String mix, int books, int depth, int priorities, int range, long seed) {
+        if (depth < 0 || priorities <= 0 || range <= 0) {
+            throw new IllegalArgumentException("Depth must not be negative, priorities and range must be positive");
+        }
+        this.random = new Random(seed);
+        this.keys = keys;
+        this.books = books;
+        this.patrons = depth + 1;
+        this.priorities = priorities;
+        this.range = range;
+        this.borrowers = new int[books + 1];
+        parseMix(mix);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java [-Dworkload.OPTION=VALUE ...] WorkloadGenerator outputFile");
+            System.exit(2);
+        }
+        int books = Integer.getInteger("workload.books", 100_000);
+        WorkloadGenerator generator = new WorkloadGenerator(
+                KeyDistribution.parse(System.getProperty("workload.keys", "uniform"), books),
+                System.getProperty("workload.mix", DEFAULT_MIX), books,
+                Integer.getInteger("workload.depth", 8), Integer.getInteger("workload.priorities", 20),
+                Integer.getInteger("workload.range", 100), Long.getLong("workload.seed", 5536));
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.US_ASCII),
+                1 << 20)) {
+            generator.preload(out, Integer.getInteger("workload.preload", books / 2));
+            generator.generate(out, Integer.getInteger("workload.commands", 1_000_000));
+            out.write("Quit()\n");
+        }
+    }
+
+    // Parses "Name:weight,..." into cumulative weights; operations left out of the mix get weight 0.
+    private void parseMix(String mix) {
+        int[] weights = new int[NAMES.length];
+        for (String entry : mix.split(",")) {
+            int colon = entry.indexOf(':');
+            int op = colon < 0 ? -1 : indexOf(entry.substring(0, colon).trim());
+            if (op < 0) {
+                throw new IllegalArgumentException("Invalid operation mix entry: " + entry);
+            }
+            weights[op] = Integer.parseInt(entry.substring(colon + 1).trim());
+            if (weights[op] < 0) {
+                throw new IllegalArgumentException("Negative weight in operation mix: " + entry);
+            }
+        }
+        int total = 0;
+        for (int i = 0; i < NAMES.length; i++) {
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Operation mix has no weights: " + mix);
+        }
+    }
+
+    private static int indexOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a BulkLoad() block inserting the given number of distinct books, chosen at random.
+     *
+     * @param out   The command file.
+     * @param count The number of books, at most the number of IDs.
+     * @throws IOException If an I/O error occurs.
+     */
+    void preload(Writer out, int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        int[] ids = new int[books];
+        for (int i = 0; i < books; i++) {
+            ids[i] = i + 1;
+        }
+        out.write("BulkLoad()\n");
+        for (int i = 0; i < Math.min(count, books); i++) {
+            int j = i + random.nextInt(books - i);
+            int bookId = ids[j];
+            ids[j] = ids[i];
+            writeInsert(out, bookId);
+        }
+        out.write("EndBulkLoad()\n");
+    }
+
+    /**
+     * Writes commands drawn from the operation mix and updates the model with their effects.
+     *
+     * @param out      The command file.
+     * @param commands The number of commands.
+     * @throws IOException If an I/O error occurs.
+     */
+    void generate(Writer out, int commands) throws IOException {
+        int total = cumulativeWeights[NAMES.length - 1];
+        for (int i = 0; i < commands; i++) {
+            int pick = random.nextInt(total);
+            int op = 0;
+            while (cumulativeWeights[op] <= pick) {
+                op++;
+            }
+            int bookId = keys.next(random);
+            switch (op) {
+                case INSERT:
+                    writeInsert(out, bookId);
+                    break;
+                case DELETE:
+                    borrowers[bookId] = 0;
+                    waitlists.remove(bookId);
+                    out.write("DeleteBook(" + bookId + ")\n");
+                    break;
+                case PRINT:
+                    out.write("PrintBook(" + bookId + ")\n");
+                    break;
+                case PRINT_RANGE:
+                    out.write("PrintBooks(" + bookId + ", " + (bookId + range - 1) + ")\n");
+                    break;
+                case BORROW:
+                    writeBorrow(out, bookId);
+                    break;
+                case RETURN:
+                    writeReturn(out, bookId);
+                    break;
+                case CLOSEST:
+                    out.write("FindClosestBook(" + bookId + ")\n");
+                    break;
+                case FLIPS:
+                    out.write("ColorFlipCount()\n");
+                    break;
+                case CANCEL: {
+                    int patronId = nextPatron();
+                    MinHeap waitlist = waitlists.get(bookId);
+                    if (waitlist != null) {
+                        waitlist.remove(patronId);
+                    }
+                    out.write("CancelReservation(" + patronId + ", " + bookId + ")\n");
+                    break;
+                }
+                default: {
+                    int patronId = nextPatron();
+                    int priority = nextPriority();
+                    MinHeap waitlist = waitlists.get(bookId);
+                    if (waitlist != null) {
+                        waitlist.updatePriority(patronId, priority);
+                    }
+                    out.write("UpdatePriority(" + patronId + ", " + bookId + ", " + priority + ")\n");
+                    break;
+                }
+            }
+        }
+    }
+
+    private void writeInsert(Writer out, int bookId) throws IOException {
+        if (borrowers[bookId] == 0) {
+            borrowers[bookId] = -1;
+        }
+        out.write("InsertBook(" + bookId + ", \"Book " + bookId + "\", \"Author " + bookId % 1000 + "\", \"Yes\")\n");
+    }
+
+    // Lends an available book, or queues a reservation unless the patron already has one.
+    private void writeBorrow(Writer out, int bookId) throws IOException {
+        int patronId = nextPatron();
+        int priority = nextPriority();
+        if (borrowers[bookId] == -1) {
+            borrowers[bookId] = patronId;
+        } else if (borrowers[bookId] > 0) {
+            MinHeap waitlist = waitlists.computeIfAbsent(bookId, id -> new MinHeap());
+            if (!waitlist.contains(patronId)) {
+                waitlist.insertNode(patronId, MinHeap.key(priority, reservationSequence++));
+            }
+        }
+        out.write("BorrowBook(" + patronId + ", " + bookId + ", " + priority + ")\n");
+    }
+
+    // Returns the book from its borrower, who hands it to the first reservation; a book nobody holds is
+    // returned by a random patron, which the library ignores.
+    private void writeReturn(Writer out, int bookId) throws IOException {
+        int patronId = borrowers[bookId];
+        if (patronId > 0) {
+            MinHeap waitlist = waitlists.get(bookId);
+            borrowers[bookId] = waitlist == null || waitlist.isEmpty() ? -1 : waitlist.pollPatronId();
+        } else {
+            patronId = nextPatron();
+        }
+        out.write("ReturnBook(" + patronId + ", " + bookId + ")\n");
+    }
+
+    private int nextPatron() {
+        return random.nextInt(patrons) + 1;
+    }
+
+    private int nextPriority() {
+        return random.nextInt(priorities) + 1;
+    }
+}
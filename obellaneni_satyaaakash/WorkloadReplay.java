@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * The `WorkloadReplay` class runs a command file, such as one written by `WorkloadGenerator`, against a storage
+ * engine and reports the throughput and the latency percentiles of every opcode. Output is discarded and each
+ * command is timed on its own, so the figures cover the engine only; the wall time also includes parsing.
+ * InsertBook commands collected by a BulkLoad() block are counted under BULK_LOAD, and the load itself under
+ * END_BULK_LOAD. Earlier runs warm up the JIT compiler; the table describes the last run.
+ * Usage: java [-DgatorLibrary.engine=NAME] WorkloadReplay commandFile [runs]
+ */
+public class WorkloadReplay {
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java [-DgatorLibrary.engine=NAME] WorkloadReplay commandFile [runs]");
+            System.exit(2);
+        }
+        String engineName = System.getProperty("gatorLibrary.engine", "tree");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        LatencyHistogram[] latencies = null;
+        for (int run = 1; run <= runs; run++) {
+            long start = System.nanoTime();
+            latencies = replay(args[0], engineName);
+            long wall = System.nanoTime() - start;
+            LatencyHistogram all = total(latencies);
+            System.out.printf(Locale.ROOT, "run %d: %d commands, %.3f s executing (%.0f commands/s), %.3f s wall%n",
+                    run, all.getCount(), all.getTotal() / 1e9, perSecond(all), wall / 1e9);
+        }
+        if (latencies != null) {
+            printTable(latencies);
+        }
+    }
+
+    /**
+     * Runs the command file once on a new engine.
+     *
+     * @param fileName   The command file.
+     * @param engineName The gatorLibrary.engine name of the engine.
+     * @return The latencies of each opcode, indexed by its ordinal.
+     * @throws IOException If the file cannot be read.
+     */
+    static LatencyHistogram[] replay(String fileName, String engineName) throws IOException {
+        LatencyHistogram[] latencies = new LatencyHistogram[Opcode.values().length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        LibraryEngine engine = gatorLibrary.createEngine(engineName, new NullSink());
+        try (InputStream in = new MappedInputStream(Paths.get(fileName))) {
+            CommandParser parser = new CommandParser(in);
+            Command command = new Command();
+            BookBatch bulk = new BookBatch();
+            boolean running = true;
+            while (running && parser.next(command)) {
+                Opcode opcode = bulk.open && command.opcode == Opcode.INSERT_BOOK ? Opcode.BULK_LOAD : command.opcode;
+                long start = System.nanoTime();
+                running = gatorLibrary.execute(engine, command, bulk);
+                latencies[opcode.ordinal()].record(System.nanoTime() - start);
+            }
+            if (running && !bulk.isEmpty()) {
+                long start = System.nanoTime();
+                gatorLibrary.finishBulkLoad(engine, bulk);
+                latencies[Opcode.END_BULK_LOAD.ordinal()].record(System.nanoTime() - start);
+            }
+        }
+        return latencies;
+    }
+
+    private static LatencyHistogram total(LatencyHistogram[] latencies) {
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram histogram : latencies) {
+            all.add(histogram);
+        }
+        return all;
+    }
+
+    // Operations per second of time spent executing them.
+    private static double perSecond(LatencyHistogram histogram) {
+        return histogram.getTotal() == 0 ? 0 : histogram.getCount() * 1e9 / histogram.getTotal();
+    }
+
+    private static void printTable(LatencyHistogram[] latencies) {
+        System.out.printf(Locale.ROOT, "%-18s %10s %12s %10s %10s %10s %10s %12s%n", "opcode", "count", "ops/s",
+                "mean ns", "p50 ns", "p99 ns", "p999 ns", "max ns");
+        Opcode[] opcodes = Opcode.values();
+        for (int i = 0; i < opcodes.length; i++) {
+            if (latencies[i].getCount() > 0) {
+                printRow(opcodes[i].name(), latencies[i]);
+            }
+        }
+        printRow("ALL", total(latencies));
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram) {
+        System.out.printf(Locale.ROOT, "%-18s %10d %12.0f %10.0f", name, histogram.getCount(), perSecond(histogram),
+                histogram.getMean());
+        for (double percentile : PERCENTILES) {
+            System.out.printf(Locale.ROOT, " %10d", histogram.percentile(percentile));
+        }
+        System.out.printf(Locale.ROOT, " %12d%n", histogram.getMax());
+    }
+}
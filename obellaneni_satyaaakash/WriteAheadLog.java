@@ -0,0 +1,337 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The `WriteAheadLog` class records every mutating library command in an append-only log file before the
+ * command is applied, so the library can be rebuilt after a crash from its last checkpoint and the commands
+ * logged after it.
+ * Each record is framed as [payload length][CRC32 of sequence number and payload][sequence number][payload].
+ * Records are encoded into one reusable buffer, so many records share each `FileChannel` write and each force
+ * (group commit) as the `SyncPolicy` allows. A checkpoint writes the complete engine state as a snapshot
+ * (see `SnapshotWriter`) that atomically replaces the previous checkpoint, and then empties the log.
+ * Recovery stops at the first torn or corrupt record and cuts the log there. A record whose command the engine
+ * rejects is reported on standard error and skipped, as the command was when it was first run.
+ */
+class WriteAheadLog implements Closeable {
+    private static final String LOG_FILE = "library.wal";
+    private static final String CHECKPOINT_FILE = "library.checkpoint";
+    private static final int HEADER_SIZE = 16;              // Length, CRC32 and sequence number
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // Record types; their values are part of the file format.
+    private static final byte INSERT_BOOK = 1;
+    private static final byte DELETE_BOOK = 2;
+    private static final byte BORROW_BOOK = 3;
+    private static final byte RETURN_BOOK = 4;
+    private static final byte CANCEL_RESERVATION = 5;
+    private static final byte UPDATE_PRIORITY = 6;
+    private static final byte BULK_LOAD = 7;
+
+    private final Path directory;
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private int recordStart;      // Position in the buffer of the record being encoded
+    private long nextSequence;    // Sequence number of the next record
+    private int recordsSinceSync;
+
+    private WriteAheadLog(Path directory, FileChannel channel, SyncPolicy policy, long nextSequence) {
+        this.directory = directory;
+        this.channel = channel;
+        this.policy = policy;
+        this.nextSequence = nextSequence;
+    }
+
+    /**
+     * Opens the log kept in a directory. The engine is first restored from the checkpoint, if there is one, and
+     * then the records logged after the checkpoint are replayed on it.
+     *
+     * @param directory The directory holding the log and the checkpoint; created if missing.
+     * @param policy    When to force records to stable storage.
+     * @param engine    The empty engine to restore.
+     * @return The log, positioned after its last intact record.
+     * @throws IOException If the log cannot be opened or the checkpoint is unusable.
+     */
+    static WriteAheadLog open(Path directory, SyncPolicy policy, LibraryEngine engine) throws IOException {
+        Files.createDirectories(directory);
+        long nextSequence = restoreCheckpoint(directory, engine);
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            nextSequence = replay(channel, nextSequence, engine);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new WriteAheadLog(directory, channel, policy, nextSequence);
+    }
+
+    // Restores the engine from the checkpoint and returns the sequence number of the first record it lacks.
+    private static long restoreCheckpoint(Path directory, LibraryEngine engine) throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        if (!(engine instanceof Checkpointable)) {
+            throw new IOException("The checkpoint in " + directory + " needs an engine that supports checkpoints");
+        }
+        return SnapshotReader.load(path, (Checkpointable) engine);
+    }
+
+    /**
+     * Applies the intact records with sequence numbers from nextSequence on, cuts off a torn or corrupt tail,
+     * and leaves the channel positioned at the end of the log.
+     */
+    private static long replay(FileChannel channel, long nextSequence, LibraryEngine engine) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)),
+                BUFFER_SIZE));
+        CRC32 crc = new CRC32();
+        long end = 0; // End of the last intact record
+        while (true) {
+            byte[] record;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 1 || length > channel.size() - end - HEADER_SIZE) {
+                    break;
+                }
+                record = new byte[8 + length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.wrap(record);
+            long sequence = payload.getLong();
+            if (sequence > nextSequence) {
+                throw new IOException("Write-ahead log is missing records before sequence number " + sequence);
+            }
+            if (sequence == nextSequence) {
+                try {
+                    apply(payload, engine);
+                } catch (RuntimeException e) {
+                    // The engine rejected this command when it was first run too; it is logged before it is applied.
+                    System.err.println("Write-ahead log record " + sequence + " failed again on replay: " + e);
+                }
+                nextSequence++;
+            }
+            end += HEADER_SIZE + record.length - 8;
+        }
+        if (end < channel.size()) {
+            channel.truncate(end);
+        }
+        channel.position(end);
+        return nextSequence;
+    }
+
+    // Performs the command of one record on the engine.
+    private static void apply(ByteBuffer payload, LibraryEngine engine) throws IOException {
+        byte type = payload.get();
+        switch (type) {
+            case INSERT_BOOK:
+                engine.insertBook(payload.getInt(), getString(payload), getString(payload), payload.get() != 0);
+                break;
+            case DELETE_BOOK:
+                engine.deleteBook(payload.getInt());
+                break;
+            case BORROW_BOOK:
+                engine.borrowBook(payload.getInt(), payload.getInt(), payload.getInt());
+                break;
+            case RETURN_BOOK:
+                engine.returnBook(payload.getInt(), payload.getInt());
+                break;
+            case CANCEL_RESERVATION:
+                engine.cancelReservation(payload.getInt(), payload.getInt());
+                break;
+            case UPDATE_PRIORITY:
+                engine.updatePriority(payload.getInt(), payload.getInt(), payload.getInt());
+                break;
+            case BULK_LOAD:
+                BookBatch books = new BookBatch();
+                int count = payload.getInt();
+                for (int i = 0; i < count; i++) {
+                    books.add(payload.getInt(), getString(payload), getString(payload), payload.get() != 0);
+                }
+                engine.bulkLoad(books);
+                break;
+            default:
+                throw new IOException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void logInsertBook(int bookId, String bookName, String authorName, boolean isAvailable) {
+        byte[] name = bookName.getBytes(StandardCharsets.UTF_8);
+        byte[] author = authorName.getBytes(StandardCharsets.UTF_8);
+        begin(INSERT_BOOK, 13 + name.length + author.length);
+        buffer.putInt(bookId);
+        putBytes(name);
+        putBytes(author);
+        buffer.put((byte) (isAvailable ? 1 : 0));
+        end();
+    }
+
+    public void logDeleteBook(int bookId) {
+        begin(DELETE_BOOK, 4);
+        buffer.putInt(bookId);
+        end();
+    }
+
+    public void logBorrowBook(int patronId, int bookId, int patronPriority) {
+        begin(BORROW_BOOK, 12);
+        buffer.putInt(patronId).putInt(bookId).putInt(patronPriority);
+        end();
+    }
+
+    public void logReturnBook(int patronId, int bookId) {
+        begin(RETURN_BOOK, 8);
+        buffer.putInt(patronId).putInt(bookId);
+        end();
+    }
+
+    public void logCancelReservation(int patronId, int bookId) {
+        begin(CANCEL_RESERVATION, 8);
+        buffer.putInt(patronId).putInt(bookId);
+        end();
+    }
+
+    public void logUpdatePriority(int patronId, int bookId, int newPriority) {
+        begin(UPDATE_PRIORITY, 12);
+        buffer.putInt(patronId).putInt(bookId).putInt(newPriority);
+        end();
+    }
+
+    // Logs a whole batch as one record, so a crash never leaves half of a bulk load applied.
+    public void logBulkLoad(BookBatch books) {
+        byte[][] names = new byte[books.size][];
+        byte[][] authors = new byte[books.size][];
+        int size = 4;
+        for (int i = 0; i < books.size; i++) {
+            names[i] = books.bookNames[i].getBytes(StandardCharsets.UTF_8);
+            authors[i] = books.authorNames[i].getBytes(StandardCharsets.UTF_8);
+            size += 13 + names[i].length + authors[i].length;
+        }
+        begin(BULK_LOAD, size);
+        buffer.putInt(books.size);
+        for (int i = 0; i < books.size; i++) {
+            buffer.putInt(books.bookIds[i]);
+            putBytes(names[i]);
+            putBytes(authors[i]);
+            buffer.put((byte) (books.available[i] ? 1 : 0));
+        }
+        end();
+    }
+
+    // Starts a record with room for a payload of the given size after its type.
+    private void begin(byte type, int payloadSize) {
+        int recordSize = HEADER_SIZE + 1 + payloadSize;
+        if (buffer.remaining() < recordSize) {
+            try {
+                writeBuffer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (buffer.capacity() < recordSize) {
+                buffer = ByteBuffer.allocate(recordSize);
+            }
+        }
+        recordStart = buffer.position();
+        buffer.position(recordStart + HEADER_SIZE);
+        buffer.put(type);
+    }
+
+    // Fills in the header of the record being encoded and applies the sync policy.
+    private void end() {
+        int length = buffer.position() - recordStart - HEADER_SIZE;
+        buffer.putInt(recordStart, length);
+        buffer.putLong(recordStart + 8, nextSequence++);
+        crc.reset();
+        crc.update(buffer.array(), recordStart + 8, 8 + length);
+        buffer.putInt(recordStart + 4, (int) crc.getValue());
+        recordsSinceSync++;
+        if (policy.getMode() != SyncPolicy.Mode.NONE && recordsSinceSync >= policy.getThreshold()) {
+            try {
+                sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void putBytes(byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Writes the buffered records and forces them to stable storage.
+    public void sync() throws IOException {
+        writeBuffer();
+        channel.force(false);
+        recordsSinceSync = 0;
+    }
+
+    /**
+     * Writes the complete state of the engine to a new checkpoint that replaces the previous one, then empties
+     * the log. A crash at any point leaves either the old checkpoint with the full log or the new checkpoint,
+     * whose sequence number tells recovery to skip the records it already contains.
+     *
+     * @param engine The engine, holding every logged command applied.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void checkpoint(Checkpointable engine) throws IOException {
+        sync();
+        SnapshotWriter.write(directory.resolve(CHECKPOINT_FILE), nextSequence, engine);
+        syncDirectory();
+        channel.truncate(0);
+        channel.force(true);
+    }
+
+    // Makes the rename of the checkpoint durable before the log it replaces is emptied. Not every platform can
+    // open a directory; there the rename is left to the file system's own ordering.
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened as channels on this platform.
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
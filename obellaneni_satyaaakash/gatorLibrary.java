@@ -1,35 +1,78 @@
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 /**
  * The `gatorLibrary` class reads commands from a file and performs operations on a Red-Black Tree (rbTree).
- * Each line in the file represents a command, and the commands are parsed and executed accordingly.
- * The results are stored in an output file with the same name as the input file appended with "_output_file.txt".
+ * Each line in the file represents a command, and the commands are decoded by a `CommandParser` and executed accordingly.
+ * The results are streamed to an output file with the same name as the input file appended with "_output_file.txt".
  */
 public class gatorLibrary {
-    private static final String COMMA = ",";
-    private static final String OPEN_PARENTHESIS = "(";
-    private static final String CLOSED_PARENTHESIS = ")";
+    private static final String OUTPUT_SUFFIX = "_output_file.txt";
 
     /**
-     * The main method reads the input file, processes each command, and generates an output file.
+     * The main method reads the input file, processes each command, and streams the results to the output file.
+     * The flush policy of the output can be chosen with -DgatorLibrary.flush=bytes:N|commands:N|quit, and
+     * -DgatorLibrary.pipeline=true parses and writes on separate threads from the one executing the commands.
+     * -DgatorLibrary.engine=array|concurrent|sharded runs the commands on the array-backed, lock-guarded or
+     * sharded storage engine instead of the plain node-based one.
+     * -DgatorLibrary.stats=true writes the engine's statistics to standard error at the end of the run.
+     * -DgatorLibrary.wal=DIR keeps the library state across runs and crashes in a write-ahead log in DIR.
+     * -DgatorLibrary.loadSnapshot=FILE starts the run from a snapshot instead of an empty library, and
+     * -DgatorLibrary.saveSnapshot=FILE writes one at the end of the run.
+     * -DgatorLibrary.metrics=true collects command latencies and engine counters for the Stats() command and
+     * publishes them over JMX.
      *
      * @param args Command-line arguments (expects the input file path as args[0]).
      */
     public static void main(String[] args) {
         try {
-            // Read the input file and initialize a Red-Black Tree.
+            // Read the input file and initialize a Red-Black Tree writing to the output file.
             String fileName = args[0];
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(new File(fileName)));
-            RedBlackTree rbTree = new RedBlackTree();
-            String row;
-
-            // Process each command in the file.
-            while ((row = bufferedReader.readLine()) != null) {
-                parse(rbTree, row, fileName.substring(0, fileName.indexOf(".")));
+            if (LibraryMetrics.ENABLED) {
+                LibraryMetrics.register(null);
+            }
+            Path quitOutput = Paths.get(outputStem(fileName) + OUTPUT_SUFFIX);
+            FlushPolicy flushPolicy = FlushPolicy.parse(System.getProperty("gatorLibrary.flush", "quit"));
+            boolean pipelined = Boolean.getBoolean("gatorLibrary.pipeline");
+            boolean quit;
+            String engineName = System.getProperty("gatorLibrary.engine", "tree");
+            String walDirectory = System.getProperty("gatorLibrary.wal");
+            String loadSnapshot = System.getProperty("gatorLibrary.loadSnapshot");
+            String saveSnapshot = System.getProperty("gatorLibrary.saveSnapshot");
+            if (walDirectory != null && (loadSnapshot != null || saveSnapshot != null)) {
+                throw new IllegalArgumentException("Snapshots cannot be combined with -DgatorLibrary.wal, whose"
+                        + " directory keeps its own checkpoint");
+            }
+            try (OutputSink out = new FileChannelSink(quitOutput, flushPolicy, pipelined);
+                 DurableLibrary durable = walDirectory == null ? null
+                         : openDurable(engineName, out, Paths.get(walDirectory))) {
+                LibraryEngine rbTree = durable != null ? durable : createEngine(engineName, out);
+                if (loadSnapshot != null) {
+                    SnapshotReader.load(Paths.get(loadSnapshot), snapshotEngine(rbTree, engineName));
+                }
+                if (pipelined) {
+                    quit = runPipelined(rbTree, openInput(fileName));
+                } else {
+                    quit = runSequential(rbTree, new FileInputStream(fileName));
+                }
+                if (saveSnapshot != null) {
+                    SnapshotWriter.write(Paths.get(saveSnapshot), 0, snapshotEngine(rbTree, engineName));
+                }
+                if (Boolean.getBoolean("gatorLibrary.stats")) {
+                    rbTree.printStats(System.err);
+                }
             }
 
-            // Create an output file with the results.
-            createOutput(fileName);
+            // Without a Quit command the output file is named after the full input file name.
+            if (!quit) {
+                Path eofOutput = Paths.get(fileName + OUTPUT_SUFFIX);
+                if (!eofOutput.equals(quitOutput)) {
+                    Files.move(quitOutput, eofOutput, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -37,66 +80,256 @@ public class gatorLibrary {
     }
 
     /**
-     * Parses a command and performs the corresponding operation on the Red-Black Tree.
+     * Creates the storage engine named by the gatorLibrary.engine property.
+     *
+     * @param name "tree" for the node-based Red-Black Tree, "array" for the array-backed one, "concurrent" for
+     *             the node-based tree behind a StampedLock, "sharded" for -DgatorLibrary.shards=N trees
+     *             partitioned by book ID.
+     * @param out  The sink receiving the results.
+     * @return The new engine.
+     */
+    static LibraryEngine createEngine(String name, OutputSink out) {
+        if (name.equals("tree")) {
+            return new RedBlackTree(out);
+        } else if (name.equals("array")) {
+            return new ArrayRedBlackTree(out);
+        } else if (name.equals("concurrent")) {
+            return new ConcurrentRedBlackTree(out);
+        } else if (name.equals("sharded")) {
+            return new ShardedLibrary(out, Integer.getInteger("gatorLibrary.shards",
+                    Runtime.getRuntime().availableProcessors()));
+        }
+        throw new IllegalArgumentException("Unknown library engine: " + name);
+    }
+
+    // Returns the engine as one that snapshots can be written from and read into.
+    private static Checkpointable snapshotEngine(LibraryEngine engine, String engineName) {
+        if (!(engine instanceof Checkpointable)) {
+            throw new IllegalArgumentException("The " + engineName + " engine does not support snapshots");
+        }
+        return (Checkpointable) engine;
+    }
+
+    /**
+     * Creates the storage engine and restores it from the write-ahead log in the given directory. Replayed
+     * commands write no output, since an earlier run already wrote their results.
+     * -DgatorLibrary.walSync=always|commands:N|none chooses when log records are forced to disk (default
+     * commands:1000), and -DgatorLibrary.checkpoint=N the number of logged commands between checkpoints
+     * (default 1000000, 0 for checkpoints only on Quit and at the end of the input).
+     *
+     * @param engineName The storage engine to create.
+     * @param out        The sink receiving the results.
+     * @param directory  The directory holding the log and the checkpoint.
+     * @return The engine, logging every mutating command before it is applied.
+     * @throws IOException If the log cannot be opened or recovered.
+     */
+    static DurableLibrary openDurable(String engineName, OutputSink out, Path directory) throws IOException {
+        MutingSink sink = new MutingSink(out);
+        LibraryEngine engine = createEngine(engineName, sink);
+        if (!(engine instanceof Checkpointable)) {
+            throw new IllegalArgumentException("The " + engineName + " engine does not support checkpoints");
+        }
+        sink.setMuted(true);
+        WriteAheadLog log = WriteAheadLog.open(directory,
+                SyncPolicy.parse(System.getProperty("gatorLibrary.walSync", "commands:1000")), engine);
+        sink.setMuted(false);
+        return new DurableLibrary(engine, log, Long.getLong("gatorLibrary.checkpoint", 1_000_000));
+    }
+
+    /**
+     * Parses and executes the commands one at a time on the calling thread.
+     *
+     * @param rbTree The library engine.
+     * @param input  The raw command input.
+     * @return True if the input ended with the Quit command.
+     * @throws IOException If an I/O error occurs while reading or writing.
+     */
+    private static boolean runSequential(LibraryEngine rbTree, InputStream input) throws IOException {
+        try (InputStream in = input) {
+            CommandParser parser = new CommandParser(in);
+            Command command = new Command();
+            BookBatch bulk = new BookBatch();
+            while (parser.next(command)) {
+                boolean quit = !execute(rbTree, command, bulk);
+                rbTree.getOutput().endCommand();
+                if (quit) {
+                    return true;
+                }
+            }
+            finishBulkLoad(rbTree, bulk);
+            return false;
+        }
+    }
+
+    /**
+     * Executes the commands decoded by a reader thread, taking them from the pipeline in batches.
      *
-     * @param rbTree   The Red-Black Tree instance.
-     * @param row      The command to be parsed.
-     * @param fileName The name of the input file (used for output file naming).
-     * @throws IOException If an I/O error occurs during parsing.
+     * @param rbTree The library engine.
+     * @param input  The raw command input.
+     * @return True if the input ended with the Quit command.
+     * @throws Exception If reading, parsing or writing fails.
      */
-    private static void parse(RedBlackTree rbTree, String row, String fileName) throws IOException {
-        // Remove double quotes and extract command details.
-        row = row.replaceAll("\"", "");
-        int start = row.indexOf(OPEN_PARENTHESIS);
-        int end = row.indexOf(CLOSED_PARENTHESIS);
-        String[] argArray = row.substring(start + 1, end).split(COMMA);
-        String operation = row.substring(0, start);
+    private static boolean runPipelined(LibraryEngine rbTree, InputStream input) throws Exception {
+        try (CommandPipeline pipeline = new CommandPipeline(input)) {
+            BookBatch bulk = new BookBatch();
+            while (true) {
+                CommandBatch batch = pipeline.take();
+                for (int i = 0; i < batch.size; i++) {
+                    boolean quit = !execute(rbTree, batch.commands[i], bulk);
+                    rbTree.getOutput().endCommand();
+                    if (quit) {
+                        return true;
+                    }
+                }
+                if (batch.error != null) {
+                    finishBulkLoad(rbTree, bulk);
+                    throw batch.error;
+                }
+                if (batch.last) {
+                    finishBulkLoad(rbTree, bulk);
+                    return false;
+                }
+                pipeline.release();
+            }
+        }
+    }
 
-        // Execute the corresponding operation based on the command.
-        if (operation.equals("InsertBook")) {
-            rbTree.insertBook(Integer.parseInt(argArray[0].trim()), argArray[1].trim(), argArray[2].trim(), argArray[3].trim());
-        } else if (operation.equals("PrintBook")) {
-            RedBlackNode book = rbTree.printBook(Integer.parseInt(argArray[0].trim()));
-            if (book == null) {
-                RedBlackTree.resultString.append("Book " + Integer.parseInt(argArray[0].trim()) + " not found in the library\n");
-            } else {
-                RedBlackTree.resultString.append(book + "\n");
+    /**
+     * Opens the input file through memory mappings, falling back to a plain stream when it cannot be mapped.
+     *
+     * @param fileName The name of the input file.
+     * @return The opened input.
+     * @throws IOException If the file cannot be opened.
+     */
+    private static InputStream openInput(String fileName) throws IOException {
+        try {
+            return new MappedInputStream(Paths.get(fileName));
+        } catch (IOException | UnsupportedOperationException e) {
+            return new FileInputStream(fileName);
+        }
+    }
+
+    /**
+     * Performs a decoded command on the Red-Black Tree.
+     * Between BulkLoad() and EndBulkLoad() the InsertBook commands are collected instead of executed. The
+     * collected books are bulk loaded at EndBulkLoad(), at the end of the input, or before any other command,
+     * so that command sees every book inserted before it. With -DgatorLibrary.metrics=true the command is timed,
+     * and the engine's gauges are published afterwards if JMX has asked for them.
+     *
+     * @param rbTree  The library engine.
+     * @param command The command to be executed.
+     * @param bulk    The books collected by the current BulkLoad() block.
+     * @return False once the Quit command has been processed, true otherwise.
+     */
+    static boolean execute(LibraryEngine rbTree, Command command, BookBatch bulk) {
+        if (!LibraryMetrics.ENABLED) {
+            return dispatch(rbTree, command, bulk);
+        }
+        long start = System.nanoTime();
+        boolean running = dispatch(rbTree, command, bulk);
+        LibraryMetrics.recordCommand(command.opcode, System.nanoTime() - start);
+        if (LibraryMetrics.gaugesRequested()) {
+            rbTree.publishGauges();
+        }
+        return running;
+    }
+
+    // Performs a decoded command; see execute.
+    private static boolean dispatch(LibraryEngine rbTree, Command command, BookBatch bulk) {
+        OutputSink out = rbTree.getOutput();
+        if (bulk.open) {
+            if (command.opcode == Opcode.INSERT_BOOK) {
+                bulk.add(command.bookId, command.bookName, command.authorName, command.isAvailable);
+                return true;
             }
-        } else if (operation.equals("PrintBooks")) {
-            rbTree.printBooks(Integer.parseInt(argArray[0].trim()), Integer.parseInt(argArray[1].trim()));
-        } else if (operation.equals("BorrowBook")) {
-            rbTree.borrowBook(Integer.parseInt(argArray[0].trim()), Integer.parseInt(argArray[1].trim()),
-                    Integer.parseInt(argArray[2].trim()));
-        } else if (operation.equals("ReturnBook")) {
-            rbTree.returnBook(Integer.parseInt(argArray[0].trim()), Integer.parseInt(argArray[1].trim()));
-        } else if (operation.equals("DeleteBook")) {
-            rbTree.deleteBook(Integer.parseInt(argArray[0].trim()));
-        } else if (operation.equals("FindClosestBook")) {
-            rbTree.findClosestBook(Integer.parseInt(argArray[0].trim()));
-        } else if (operation.equals("ColorFlipCount")) {
-            rbTree.getColorFlipCount();
-        } else if (operation.equals("Quit")) {
-            // Quit the program, create an output file, and exit.
-            rbTree.quit();
-            createOutput(fileName);
-            System.exit(0);
-        } else {
-            // Handle invalid commands.
-            RedBlackTree.resultString.append("Invalid gatorLibrary operation\n");
+            finishBulkLoad(rbTree, bulk);
+        }
+        switch (command.opcode) {
+            case INSERT_BOOK:
+                rbTree.insertBook(command.bookId, command.bookName, command.authorName, command.isAvailable);
+                break;
+            case PRINT_BOOK:
+                rbTree.writeBook(command.bookId);
+                break;
+            case PRINT_BOOKS:
+                rbTree.printBooks(command.bookId, command.bookId2);
+                break;
+            case PRINT_BOOKS_PAGE:
+                rbTree.printBooks(command.bookId, command.bookId2, command.offset, command.limit);
+                break;
+            case COUNT_BOOKS:
+                rbTree.countBooks(command.bookId, command.bookId2);
+                break;
+            case PRINT_BOOKS_BY_AUTHOR:
+                rbTree.printBooksByAuthor(command.authorName);
+                break;
+            case SEARCH_TITLE:
+                rbTree.searchTitle(command.bookName);
+                break;
+            case BORROW_BOOK:
+                rbTree.borrowBook(command.patronId, command.bookId, command.priority);
+                break;
+            case RETURN_BOOK:
+                rbTree.returnBook(command.patronId, command.bookId);
+                break;
+            case DELETE_BOOK:
+                rbTree.deleteBook(command.bookId);
+                break;
+            case FIND_CLOSEST_BOOK:
+                rbTree.findClosestBook(command.bookId);
+                break;
+            case COLOR_FLIP_COUNT:
+                rbTree.getColorFlipCount();
+                break;
+            case CANCEL_RESERVATION:
+                rbTree.cancelReservation(command.patronId, command.bookId);
+                break;
+            case UPDATE_PRIORITY:
+                rbTree.updatePriority(command.patronId, command.bookId, command.priority);
+                break;
+            case BULK_LOAD:
+                bulk.open = true;
+                break;
+            case END_BULK_LOAD:
+                bulk.open = false;
+                break;
+            case STATS:
+                rbTree.stats();
+                break;
+            case QUIT:
+                // Quit the program; the output file is closed by the caller.
+                rbTree.quit();
+                return false;
+            default:
+                // Handle invalid commands.
+                out.append("Invalid gatorLibrary operation\n");
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Loads the books collected so far by a BulkLoad() block into the engine in one pass.
+     *
+     * @param rbTree The library engine.
+     * @param bulk   The collected books; emptied afterwards.
+     */
+    static void finishBulkLoad(LibraryEngine rbTree, BookBatch bulk) {
+        if (!bulk.isEmpty()) {
+            bulk.sortById();
+            rbTree.bulkLoad(bulk);
+            bulk.clear();
         }
     }
 
     /**
-     * Creates an output file with the results stored in the Red-Black Tree.
+     * Returns the input file name up to its first dot, which names the output file when the input ends with Quit.
      *
-     * @param fileName The name of the input file (used for output file naming).
-     * @throws IOException If an I/O error occurs during file creation.
+     * @param fileName The name of the input file.
+     * @return The prefix used for the output file name.
      */
-    private static void createOutput(String fileName) throws IOException {
-        FileWriter fileWriter = new FileWriter(fileName + "_output_file.txt");
-        BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-        bufferedWriter.write(String.valueOf(RedBlackTree.resultString));
-        bufferedWriter.close();
-        fileWriter.close();
+    private static String outputStem(String fileName) {
+        int dot = fileName.indexOf(".");
+        return dot < 0 ? fileName : fileName.substring(0, dot);
     }
 }